@@ -0,0 +1,274 @@
+package com.itant.androidtool.network;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步执行HTTP请求，限制总并发数和同一主机的并发数。
+ * 超过限制的请求先排队，有请求完成时再按提交顺序执行，因此执行线程不会因为等待连接而阻塞
+ * @author iTant
+ *
+ */
+public class AsyncHttpClient {
+
+	/** 默认最多同时执行64个请求 */
+	public static final int DEFAULT_MAX_REQUESTS = 64;
+
+	/** 默认同一主机最多同时执行5个请求，与连接池每个路由的默认连接数相同 */
+	public static final int DEFAULT_MAX_REQUESTS_PER_HOST = ConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+	/**
+	 * 把响应转换为结果，在执行请求的线程中调用，调用后响应会被关闭
+	 */
+	public interface ResponseHandler<T> {
+		T handle(HttpResponse response) throws IOException;
+	}
+
+	/**
+	 * 请求完成的回调，在执行请求的线程中调用(请求被取消时在调用cancel的线程中调用)，
+	 * 需要更新界面时请自行切换到主线程
+	 */
+	public interface Callback<T> {
+		void onSuccess(T result);
+
+		void onFailure(IOException e);
+	}
+
+	private final HttpClient httpClient;
+	private final Executor executor;
+
+	private int maxRequests = DEFAULT_MAX_REQUESTS;
+	private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+
+	/** 等待执行的请求 */
+	private final Deque<HttpCall<?>> readyCalls = new ArrayDeque<HttpCall<?>>();
+	/** 正在执行的请求 */
+	private final Set<HttpCall<?>> runningCalls = new HashSet<HttpCall<?>>();
+	/** 每个主机正在执行的请求数 */
+	private final Map<String, Integer> runningPerHost = new HashMap<String, Integer>();
+
+	public AsyncHttpClient() {
+		this(HttpClient.getDefault(), null);
+	}
+
+	/**
+	 * @param httpClient 实际执行请求的客户端
+	 * @param executor 执行请求的线程池，null表示使用内置的线程池(按需创建线程，空闲60秒后回收)。
+	 *                 线程池需要能同时执行{@link #setMaxRequests(int)}个任务，否则请求会在线程池中排队
+	 */
+	public AsyncHttpClient(HttpClient httpClient, Executor executor) {
+		this.httpClient = httpClient;
+		this.executor = executor != null ? executor : createDefaultExecutor();
+	}
+
+	private static class ClientProvider {
+		private static AsyncHttpClient instance = new AsyncHttpClient();
+	}
+
+	/**
+	 * @return 共享的AsyncHttpClient，使用{@link HttpClient#getDefault()}执行请求
+	 */
+	public static AsyncHttpClient getDefault() {
+		return ClientProvider.instance;
+	}
+
+	private static class TimerProvider {
+		private static ScheduledExecutorService timer = createTimer();
+
+		private static ScheduledExecutorService createTimer() {
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "AsyncHttpClient-timeout");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			return timer;
+		}
+	}
+
+	private static Executor createDefaultExecutor() {
+		// 总并发数由调度逻辑控制，线程池本身不需要排队
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "AsyncHttpClient-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	public HttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	public synchronized int getMaxRequests() {
+		return maxRequests;
+	}
+
+	/**
+	 * @param maxRequests 最多同时执行的请求数
+	 */
+	public void setMaxRequests(int maxRequests) {
+		if (maxRequests <= 0) {
+			throw new IllegalArgumentException("maxRequests <= 0: " + maxRequests);
+		}
+		synchronized (this) {
+			this.maxRequests = maxRequests;
+		}
+		promoteCalls();
+	}
+
+	public synchronized int getMaxRequestsPerHost() {
+		return maxRequestsPerHost;
+	}
+
+	/**
+	 * @param maxRequestsPerHost 同一主机最多同时执行的请求数，超过连接池每个路由的连接数时多出的请求会在连接池中等待
+	 */
+	public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+		if (maxRequestsPerHost <= 0) {
+			throw new IllegalArgumentException("maxRequestsPerHost <= 0: " + maxRequestsPerHost);
+		}
+		synchronized (this) {
+			this.maxRequestsPerHost = maxRequestsPerHost;
+		}
+		promoteCalls();
+	}
+
+	/**
+	 * 提交一个异步请求
+	 *
+	 * @param request 请求，{@link HttpRequest#getCallTimeout()}大于0时超时后自动取消
+	 * @param handler 把响应转换为结果
+	 * @param callback 完成时的回调，可以为null
+	 * @return 可以用来等待结果或者取消请求
+	 */
+	public <T> HttpCall<T> enqueue(HttpRequest request, ResponseHandler<T> handler, Callback<T> callback) {
+		final HttpCall<T> call = new HttpCall<T>(this, request, handler, callback);
+		if (request.getCallTimeout() > 0) {
+			call.timeoutTask = TimerProvider.timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					call.timeout();
+				}
+			}, request.getCallTimeout(), TimeUnit.MILLISECONDS);
+		}
+		synchronized (this) {
+			readyCalls.add(call);
+		}
+		promoteCalls();
+		return call;
+	}
+
+	/**
+	 * 取消所有排队和正在执行的请求
+	 */
+	public void cancelAll() {
+		HttpCall<?>[] calls;
+		synchronized (this) {
+			calls = readyCalls.toArray(new HttpCall<?>[readyCalls.size()]);
+			readyCalls.clear();
+		}
+		for (HttpCall<?> call : calls) {
+			call.cancel(false);
+		}
+		synchronized (this) {
+			calls = runningCalls.toArray(new HttpCall<?>[runningCalls.size()]);
+		}
+		for (HttpCall<?> call : calls) {
+			call.cancel(false);
+		}
+	}
+
+	/**
+	 * @return 正在执行的请求数
+	 */
+	public synchronized int getRunningCount() {
+		return runningCalls.size();
+	}
+
+	/**
+	 * @return 排队等待执行的请求数
+	 */
+	public synchronized int getQueuedCount() {
+		return readyCalls.size();
+	}
+
+	/**
+	 * 请求执行完毕(包括失败和取消)
+	 */
+	void finished(HttpCall<?> call) {
+		synchronized (this) {
+			if (!runningCalls.remove(call)) {
+				return;
+			}
+			Integer count = runningPerHost.get(call.host);
+			if (count == 1) {
+				runningPerHost.remove(call.host);
+			} else {
+				runningPerHost.put(call.host, count - 1);
+			}
+		}
+		promoteCalls();
+	}
+
+	/**
+	 * 在不超过并发限制的前提下，按提交顺序执行排队的请求
+	 */
+	private void promoteCalls() {
+		while (true) {
+			HttpCall<?> next = null;
+			synchronized (this) {
+				if (runningCalls.size() >= maxRequests) {
+					return;
+				}
+				for (Iterator<HttpCall<?>> iterator = readyCalls.iterator(); iterator.hasNext();) {
+					HttpCall<?> call = iterator.next();
+					if (call.isDone()) {
+						// 排队时已被取消，回调已经执行过
+						iterator.remove();
+						continue;
+					}
+					Integer count = runningPerHost.get(call.host);
+					if (count == null || count < maxRequestsPerHost) {
+						iterator.remove();
+						next = call;
+						break;
+					}
+				}
+				if (next == null) {
+					return;
+				}
+				runningCalls.add(next);
+				Integer count = runningPerHost.get(next.host);
+				runningPerHost.put(next.host, count == null ? 1 : count + 1);
+			}
+			try {
+				executor.execute(next);
+			} catch (RejectedExecutionException e) {
+				next.reject(e);
+			}
+		}
+	}
+}
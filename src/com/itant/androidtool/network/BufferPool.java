@@ -0,0 +1,51 @@
+package com.itant.androidtool.network;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 复用固定大小的byte[]缓冲区，避免每次读取响应体都分配新的数组
+ * @author iTant
+ *
+ */
+public final class BufferPool {
+
+	/** 缓冲区大小 */
+	public static final int BUFFER_SIZE = 16 * 1024;
+
+	/** 最多保留的空闲缓冲区个数 */
+	private static final int MAX_POOLED = 16;
+
+	private static final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger pooledCount = new AtomicInteger();
+
+	private BufferPool() {}
+
+	/**
+	 * @return 一个长度为{@link #BUFFER_SIZE}的缓冲区，用完后调用{@link #release(byte[])}归还
+	 */
+	public static byte[] acquire() {
+		byte[] buffer = buffers.poll();
+		if (buffer == null) {
+			return new byte[BUFFER_SIZE];
+		}
+		pooledCount.decrementAndGet();
+		return buffer;
+	}
+
+	/**
+	 * 归还缓冲区，归还后不能再使用
+	 *
+	 * @param buffer 由{@link #acquire()}得到的缓冲区
+	 */
+	public static void release(byte[] buffer) {
+		if (buffer == null || buffer.length != BUFFER_SIZE) {
+			return;
+		}
+		if (pooledCount.incrementAndGet() > MAX_POOLED) {
+			pooledCount.decrementAndGet();
+			return;
+		}
+		buffers.offer(buffer);
+	}
+}
@@ -0,0 +1,262 @@
+package com.itant.androidtool.network;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * HTTP连接池，按路由(协议+主机+端口)保存空闲的keep-alive连接，供后续请求复用，省去重新建立TCP/TLS连接的开销。
+ * 每个路由同时存在的连接数有上限，达到上限时新的请求会等待其他请求归还连接；空闲超过keepAlive时间的连接会被关闭
+ * @author iTant
+ *
+ */
+public class ConnectionPool {
+
+	/** 默认每个路由最多5条连接 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+
+	/** 默认空闲连接保留5分钟 */
+	public static final long DEFAULT_KEEP_ALIVE_MILLIS = 5 * 60 * 1000L;
+
+	private final int maxConnectionsPerRoute;
+	private final long keepAliveMillis;
+
+	private final Map<String, Route> routes = new HashMap<String, Route>();
+
+	private long lastEviction;
+
+	private long createdCount;
+	private long reusedCount;
+	private long evictedCount;
+
+	public ConnectionPool() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_KEEP_ALIVE_MILLIS);
+	}
+
+	/**
+	 * @param maxConnectionsPerRoute 每个路由同时存在的最大连接数(包括使用中和空闲的)
+	 * @param keepAliveMillis 空闲连接的最长保留时间(毫秒)
+	 */
+	public ConnectionPool(int maxConnectionsPerRoute, long keepAliveMillis) {
+		if (maxConnectionsPerRoute <= 0) {
+			throw new IllegalArgumentException("maxConnectionsPerRoute <= 0: " + maxConnectionsPerRoute);
+		}
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		this.keepAliveMillis = keepAliveMillis;
+	}
+
+	/**
+	 * 获取一条可复用的空闲连接。没有空闲连接且未达到上限时返回null，
+	 * 表示调用者可以新建一条连接(名额已被预留，新建失败时必须调用{@link #cancelReservation(String)})
+	 *
+	 * @param route 路由
+	 * @param timeoutMillis 达到上限时最长等待时间(毫秒)，0表示一直等待
+	 */
+	synchronized HttpConnection acquire(String route, long timeoutMillis) throws InterruptedIOException {
+		evictIfNeeded();
+		long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+		while (true) {
+			// 每次等待后重新获取，等待期间路由可能已被淘汰
+			Route entry = getRoute(route);
+			// 优先使用最近归还的连接，它被服务器关闭的可能性最小
+			HttpConnection connection;
+			while ((connection = entry.idle.pollFirst()) != null) {
+				if (!connection.isClosed()) {
+					reusedCount++;
+					return connection;
+				}
+				entry.total--;
+			}
+			if (entry.total < maxConnectionsPerRoute) {
+				entry.total++;
+				createdCount++;
+				return null;
+			}
+
+			long waitMillis = 0;
+			if (deadline != 0) {
+				waitMillis = deadline - System.currentTimeMillis();
+				if (waitMillis <= 0) {
+					throw new SocketTimeoutException("timeout waiting for connection to " + route);
+				}
+			}
+			// 有人等待时路由不会被淘汰
+			entry.waiters++;
+			try {
+				wait(waitMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted waiting for connection to " + route);
+			} finally {
+				entry.waiters--;
+			}
+		}
+	}
+
+	private Route getRoute(String route) {
+		Route entry = routes.get(route);
+		if (entry == null) {
+			entry = new Route();
+			routes.put(route, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * 新建连接失败时释放{@link #acquire(String, long)}预留的名额
+	 */
+	synchronized void cancelReservation(String route) {
+		Route entry = routes.get(route);
+		if (entry != null && entry.total > 0) {
+			entry.total--;
+			createdCount--;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * 归还连接
+	 *
+	 * @param connection 连接
+	 * @param reusable 连接是否还能继续使用，不能使用的连接会被关闭
+	 */
+	synchronized void release(HttpConnection connection, boolean reusable) {
+		Route entry = routes.get(connection.route);
+		if (entry == null) {
+			// 不应发生：使用中的连接所在的路由不会被淘汰。计数已经对不上，只关闭连接
+			connection.close();
+		} else if (reusable && keepAliveMillis > 0 && !connection.isClosed()) {
+			connection.idleSince = System.currentTimeMillis();
+			entry.idle.addFirst(connection);
+		} else {
+			connection.close();
+			if (entry.total > 0) {
+				entry.total--;
+			}
+		}
+		notifyAll();
+		evictIfNeeded();
+	}
+
+	/**
+	 * 关闭所有空闲超过keepAlive时间的连接
+	 *
+	 * @return 关闭的连接数
+	 */
+	public synchronized int evictIdleConnections() {
+		long now = System.currentTimeMillis();
+		lastEviction = now;
+		int evicted = 0;
+		for (Iterator<Route> routeIterator = routes.values().iterator(); routeIterator.hasNext();) {
+			Route entry = routeIterator.next();
+			// 最久未使用的连接在队尾
+			HttpConnection connection;
+			while ((connection = entry.idle.peekLast()) != null && now - connection.idleSince >= keepAliveMillis) {
+				entry.idle.pollLast();
+				connection.close();
+				entry.total--;
+				evicted++;
+			}
+			if (entry.total == 0 && entry.waiters == 0) {
+				routeIterator.remove();
+			}
+		}
+		evictedCount += evicted;
+		if (evicted > 0) {
+			notifyAll();
+		}
+		return evicted;
+	}
+
+	/**
+	 * 关闭所有空闲连接
+	 */
+	public synchronized void evictAll() {
+		for (Iterator<Route> routeIterator = routes.values().iterator(); routeIterator.hasNext();) {
+			Route entry = routeIterator.next();
+			HttpConnection connection;
+			while ((connection = entry.idle.pollFirst()) != null) {
+				connection.close();
+				entry.total--;
+				evictedCount++;
+			}
+			if (entry.total == 0 && entry.waiters == 0) {
+				routeIterator.remove();
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * 距离上次淘汰超过keepAlive时间的一半时顺便淘汰一次，不需要额外的清理线程
+	 */
+	private void evictIfNeeded() {
+		if (System.currentTimeMillis() - lastEviction >= keepAliveMillis / 2) {
+			evictIdleConnections();
+		}
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	public long getKeepAliveMillis() {
+		return keepAliveMillis;
+	}
+
+	/**
+	 * @return 新建的连接总数
+	 */
+	public synchronized long getCreatedCount() {
+		return createdCount;
+	}
+
+	/**
+	 * @return 复用空闲连接的总次数
+	 */
+	public synchronized long getReusedCount() {
+		return reusedCount;
+	}
+
+	/**
+	 * @return 因空闲过久而被关闭的连接总数
+	 */
+	public synchronized long getEvictedCount() {
+		return evictedCount;
+	}
+
+	/**
+	 * @return 当前空闲的连接数
+	 */
+	public synchronized int getIdleCount() {
+		int count = 0;
+		for (Route entry : routes.values()) {
+			count += entry.idle.size();
+		}
+		return count;
+	}
+
+	/**
+	 * @return 当前的连接总数(包括使用中和空闲的)
+	 */
+	public synchronized int getConnectionCount() {
+		int count = 0;
+		for (Route entry : routes.values()) {
+			count += entry.total;
+		}
+		return count;
+	}
+
+	private static class Route {
+		/** 空闲连接，队首为最近归还的 */
+		final Deque<HttpConnection> idle = new ArrayDeque<HttpConnection>();
+		/** 该路由的连接总数(包括使用中、空闲的以及正在建立的)，不为0时路由不会被淘汰 */
+		int total;
+		/** 正在等待名额的请求数，不为0时路由不会被淘汰 */
+		int waiters;
+	}
+}
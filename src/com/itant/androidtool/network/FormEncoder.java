@@ -0,0 +1,245 @@
+package com.itant.androidtool.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按application/x-www-form-urlencoded规则编码请求参数，字符按UTF-8编码后转义，结果与URLEncoder.encode(s, "UTF-8")相同。
+ * 直接写入输出流或者StringBuilder，不创建中间的String，也不需要每次按名字查找字符集
+ * @author iTant
+ *
+ */
+public final class FormEncoder {
+
+	/** application/x-www-form-urlencoded的Content-Type */
+	public static final String CONTENT_TYPE = "application/x-www-form-urlencoded;charset=UTF-8";
+
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+	/** 不需要转义的ASCII字符 */
+	private static final boolean[] SAFE = new boolean[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			SAFE[c] = true;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			SAFE[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			SAFE[c] = true;
+		}
+		SAFE['.'] = true;
+		SAFE['-'] = true;
+		SAFE['*'] = true;
+		SAFE['_'] = true;
+	}
+
+	private FormEncoder() {}
+
+	/**
+	 * 将参数编码后写入输出流，如"a=1&b=%E4%B8%AD"
+	 *
+	 * @param params 请求参数
+	 * @param out 目标输出流
+	 */
+	public static void writeTo(RequestParams params, OutputStream out) throws IOException {
+		byte[] buffer = BufferPool.acquire();
+		try {
+			Sink sink = new Sink(buffer, out);
+			boolean first = true;
+			for (Map.Entry<String, List<String>> param : params.getParams().entrySet()) {
+				for (String value : param.getValue()) {
+					if (!first) {
+						sink.write('&');
+					}
+					first = false;
+					encode(param.getKey(), sink);
+					sink.write('=');
+					encode(value, sink);
+				}
+			}
+			sink.flush();
+		} finally {
+			BufferPool.release(buffer);
+		}
+	}
+
+	/**
+	 * 将参数编码后追加到StringBuilder，用于拼接GET请求的URL
+	 *
+	 * @param params 请求参数
+	 * @param builder 目标
+	 */
+	public static void appendTo(RequestParams params, StringBuilder builder) {
+		boolean first = true;
+		for (Map.Entry<String, List<String>> param : params.getParams().entrySet()) {
+			for (String value : param.getValue()) {
+				if (!first) {
+					builder.append('&');
+				}
+				first = false;
+				appendEncoded(param.getKey(), builder);
+				builder.append('=');
+				appendEncoded(value, builder);
+			}
+		}
+	}
+
+	/**
+	 * 计算编码后的字节数，不实际编码，用于设置Content-Length
+	 *
+	 * @param params 请求参数
+	 * @return 编码后的字节数
+	 */
+	public static long encodedLength(RequestParams params) {
+		long length = 0;
+		boolean first = true;
+		for (Map.Entry<String, List<String>> param : params.getParams().entrySet()) {
+			for (String value : param.getValue()) {
+				if (!first) {
+					length++;
+				}
+				first = false;
+				length += encodedLength(param.getKey()) + 1 + encodedLength(value);
+			}
+		}
+		return length;
+	}
+
+	private static long encodedLength(String s) {
+		if (s == null) {
+			return 0;
+		}
+		long length = 0;
+		int size = s.length();
+		for (int i = 0; i < size; i++) {
+			char c = s.charAt(i);
+			if (c < 128) {
+				length += SAFE[c] || c == ' ' ? 1 : 3;
+			} else if (c < 0x800) {
+				length += 6;
+			} else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(s.charAt(i + 1))) {
+				length += 12;
+				i++;
+			} else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+				// 不成对的代理字符按'?'编码
+				length += 3;
+			} else {
+				length += 9;
+			}
+		}
+		return length;
+	}
+
+	private static void encode(String s, Sink sink) throws IOException {
+		if (s == null) {
+			return;
+		}
+		int size = s.length();
+		for (int i = 0; i < size; i++) {
+			char c = s.charAt(i);
+			if (c < 128) {
+				if (SAFE[c]) {
+					sink.write(c);
+				} else if (c == ' ') {
+					sink.write('+');
+				} else {
+					sink.escape(c);
+				}
+			} else if (c < 0x800) {
+				sink.escape(0xC0 | (c >> 6));
+				sink.escape(0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				sink.escape(0xF0 | (codePoint >> 18));
+				sink.escape(0x80 | ((codePoint >> 12) & 0x3F));
+				sink.escape(0x80 | ((codePoint >> 6) & 0x3F));
+				sink.escape(0x80 | (codePoint & 0x3F));
+			} else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+				sink.escape('?');
+			} else {
+				sink.escape(0xE0 | (c >> 12));
+				sink.escape(0x80 | ((c >> 6) & 0x3F));
+				sink.escape(0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	private static void appendEncoded(String s, StringBuilder builder) {
+		if (s == null) {
+			return;
+		}
+		int size = s.length();
+		for (int i = 0; i < size; i++) {
+			char c = s.charAt(i);
+			if (c < 128) {
+				if (SAFE[c]) {
+					builder.append(c);
+				} else if (c == ' ') {
+					builder.append('+');
+				} else {
+					appendEscaped(c, builder);
+				}
+			} else if (c < 0x800) {
+				appendEscaped(0xC0 | (c >> 6), builder);
+				appendEscaped(0x80 | (c & 0x3F), builder);
+			} else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				appendEscaped(0xF0 | (codePoint >> 18), builder);
+				appendEscaped(0x80 | ((codePoint >> 12) & 0x3F), builder);
+				appendEscaped(0x80 | ((codePoint >> 6) & 0x3F), builder);
+				appendEscaped(0x80 | (codePoint & 0x3F), builder);
+			} else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+				appendEscaped('?', builder);
+			} else {
+				appendEscaped(0xE0 | (c >> 12), builder);
+				appendEscaped(0x80 | ((c >> 6) & 0x3F), builder);
+				appendEscaped(0x80 | (c & 0x3F), builder);
+			}
+		}
+	}
+
+	private static void appendEscaped(int b, StringBuilder builder) {
+		builder.append('%').append((char) HEX[(b >> 4) & 0xF]).append((char) HEX[b & 0xF]);
+	}
+
+	/**
+	 * 先写入缓冲区，满了再整块写出，避免逐字节写入输出流
+	 */
+	private static class Sink {
+		private final byte[] buffer;
+		private final OutputStream out;
+		private int count;
+
+		Sink(byte[] buffer, OutputStream out) {
+			this.buffer = buffer;
+			this.out = out;
+		}
+
+		void write(int b) throws IOException {
+			if (count == buffer.length) {
+				flush();
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		void escape(int b) throws IOException {
+			if (count + 3 > buffer.length) {
+				flush();
+			}
+			buffer[count++] = '%';
+			buffer[count++] = HEX[(b >> 4) & 0xF];
+			buffer[count++] = HEX[b & 0xF];
+		}
+
+		void flush() throws IOException {
+			if (count > 0) {
+				out.write(buffer, 0, count);
+				count = 0;
+			}
+		}
+	}
+}
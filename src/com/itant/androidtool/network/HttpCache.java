@@ -0,0 +1,713 @@
+package com.itant.androidtool.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+
+import com.itant.androidtool.storage.FileTool;
+import com.itant.androidtool.string.DateTool;
+
+/**
+ * GET请求的响应缓存，分为内存LRU和磁盘两级，都有大小上限。
+ * 遵守Cache-Control/max-age/Expires，过期后带上ETag(If-None-Match)和Last-Modified(If-Modified-Since)向服务器确认，
+ * 服务器返回304时直接使用缓存的内容。通过{@link HttpClient#setCache(HttpCache)}启用
+ * @author iTant
+ *
+ */
+public class HttpCache {
+
+	/** 默认的缓存文件夹名字 */
+	public static final String DEFAULT_FOLDER_NAME = "http-cache";
+
+	/** 默认内存缓存上限1MB */
+	public static final long DEFAULT_MAX_MEMORY_BYTES = 1024 * 1024;
+
+	/** 没有max-age和Expires时，按Last-Modified估算的有效期上限 */
+	private static final long MAX_HEURISTIC_LIFETIME = 24 * 60 * 60 * 1000L;
+
+	private static final int MAGIC = 0x48434331;
+	private static final String ENTRY_SUFFIX = ".entry";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+	private final File directory;
+	private final long maxDiskBytes;
+	private final long maxMemoryBytes;
+	/** 单个响应体超过该大小时不缓存 */
+	private final long maxEntryBytes;
+
+	/** 内存缓存，按访问顺序排列，key为URL */
+	private final LinkedHashMap<String, Entry> memoryEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long memoryBytes;
+
+	/** 磁盘上的缓存文件，按访问顺序排列，key为文件名，value为文件大小 */
+	private final LinkedHashMap<String, Long> diskEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long diskBytes;
+	private boolean initialized;
+
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong conditionalHitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * @param directory 磁盘缓存的文件夹
+	 * @param maxDiskBytes 磁盘缓存的最大字节数
+	 * @param maxMemoryBytes 内存缓存的最大字节数，0表示不使用内存缓存
+	 */
+	public HttpCache(File directory, long maxDiskBytes, long maxMemoryBytes) {
+		if (maxDiskBytes <= 0) {
+			throw new IllegalArgumentException("maxDiskBytes <= 0: " + maxDiskBytes);
+		}
+		this.directory = directory;
+		this.maxDiskBytes = maxDiskBytes;
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.maxEntryBytes = maxDiskBytes / 8;
+	}
+
+	/**
+	 * 在{@link FileTool#getFileDir(Context)}下的{@link #DEFAULT_FOLDER_NAME}文件夹中创建缓存
+	 *
+	 * @param context 上下文
+	 * @param maxDiskBytes 磁盘缓存的最大字节数
+	 */
+	public static HttpCache create(Context context, long maxDiskBytes) {
+		File directory = new File(FileTool.getInstance().getFileDir(context), DEFAULT_FOLDER_NAME);
+		return new HttpCache(directory, maxDiskBytes, DEFAULT_MAX_MEMORY_BYTES);
+	}
+
+	/**
+	 * 通过缓存执行GET请求
+	 */
+	HttpResponse execute(HttpClient client, HttpRequest request, HttpCall<?> call) throws IOException {
+		requestCount.incrementAndGet();
+		String requestCacheControl = request.getHeader("Cache-Control");
+		if (request.getHeader("Range") != null || request.getHeader("Authorization") != null
+				|| hasDirective(requestCacheControl, "no-store")) {
+			missCount.incrementAndGet();
+			return client.executeNetwork(request, call);
+		}
+
+		String key = request.getUrl().toExternalForm();
+		long now = System.currentTimeMillis();
+		// 请求指定no-cache时跳过缓存直接访问网络，但结果仍会被缓存
+		Entry entry = hasDirective(requestCacheControl, "no-cache") ? null : get(key);
+		HttpRequest networkRequest = request;
+		if (entry != null) {
+			if (entry.isFresh(now)) {
+				hitCount.incrementAndGet();
+				return entry.toResponse();
+			}
+			String etag = entry.getHeader("etag");
+			String lastModified = entry.getHeader("last-modified");
+			if (etag == null && lastModified == null) {
+				entry = null;
+			} else {
+				networkRequest = request.copy();
+				if (etag != null) {
+					networkRequest.setHeader("If-None-Match", etag);
+				}
+				if (lastModified != null) {
+					networkRequest.setHeader("If-Modified-Since", lastModified);
+				}
+			}
+		}
+
+		HttpResponse response = client.executeNetwork(networkRequest, call);
+		if (entry != null && response.getCode() == 304) {
+			response.close();
+			conditionalHitCount.incrementAndGet();
+			Entry updated = entry.revalidate(response.getHeaders(), System.currentTimeMillis());
+			put(key, updated);
+			return updated.toResponse();
+		}
+
+		missCount.incrementAndGet();
+		if (!isCacheable(response)) {
+			if (hasDirective(response.getHeader("Cache-Control"), "no-store")) {
+				remove(key);
+			}
+			return response;
+		}
+		return tee(key, response, now);
+	}
+
+	/**
+	 * 包装网络响应，调用者读完响应体时顺便把内容写入缓存，调用者仍然是边下载边读取
+	 */
+	private HttpResponse tee(final String key, final HttpResponse response, final long requestTime) {
+		final InputStream body = response.getBody();
+		final long contentLength = response.getContentLength();
+		InputStream content = new FilterInputStream(body) {
+			private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+			private boolean stored;
+
+			@Override
+			public int read() throws IOException {
+				int b = in.read();
+				if (b == -1) {
+					store();
+				} else if (copy != null) {
+					copy.write(b);
+					checkSize();
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int count) throws IOException {
+				int read = in.read(buffer, offset, count);
+				if (read == -1) {
+					store();
+				} else if (copy != null) {
+					copy.write(buffer, offset, read);
+					checkSize();
+				}
+				return read;
+			}
+
+			private void checkSize() {
+				if (copy.size() > maxEntryBytes) {
+					// 太大的响应不缓存
+					copy = null;
+				} else if (copy.size() == contentLength) {
+					// 调用者读够Content-Length后可能不再读到结尾
+					store();
+				}
+			}
+
+			private void store() {
+				if (copy == null || stored) {
+					return;
+				}
+				stored = true;
+				put(key, new Entry(key, response.getCode(), response.getMessage(), response.getHeaders(), requestTime,
+						copy.toByteArray()));
+				copy = null;
+			}
+		};
+		return new HttpResponse(response.getCode(), response.getMessage(), response.getHeaders(), body, content,
+				new HttpResponse.Releaser() {
+					@Override
+					public void release(boolean reusable) {
+						response.close();
+					}
+				});
+	}
+
+	private boolean isCacheable(HttpResponse response) {
+		if (response.getCode() != 200 || response.getHeader("Content-Encoding") != null) {
+			return false;
+		}
+		String cacheControl = response.getHeader("Cache-Control");
+		if (hasDirective(cacheControl, "no-store")) {
+			return false;
+		}
+		String vary = response.getHeader("Vary");
+		if (vary != null && !"accept-encoding".equalsIgnoreCase(vary.trim())) {
+			return false;
+		}
+		long contentLength = response.getContentLength();
+		if (contentLength > maxEntryBytes) {
+			return false;
+		}
+		// 既没有有效期也无法确认是否过期的响应，缓存了也用不上
+		return cacheControl != null && cacheControl.toLowerCase(Locale.US).contains("max-age")
+				|| response.getHeader("Expires") != null || response.getHeader("ETag") != null
+				|| response.getHeader("Last-Modified") != null;
+	}
+
+	/**
+	 * 判断Cache-Control中是否包含某个指令
+	 */
+	private static boolean hasDirective(String cacheControl, String directive) {
+		if (cacheControl == null) {
+			return false;
+		}
+		for (String part : cacheControl.split(",")) {
+			String name = part.trim();
+			int equals = name.indexOf('=');
+			if (equals >= 0) {
+				name = name.substring(0, equals).trim();
+			}
+			if (name.equalsIgnoreCase(directive)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return Cache-Control中指令的秒数，如max-age=60返回60，没有时返回-1
+	 */
+	private static long getSeconds(String cacheControl, String directive) {
+		if (cacheControl == null) {
+			return -1;
+		}
+		for (String part : cacheControl.split(",")) {
+			int equals = part.indexOf('=');
+			if (equals >= 0 && part.substring(0, equals).trim().equalsIgnoreCase(directive)) {
+				String value = part.substring(equals + 1).trim();
+				if (value.length() > 1 && value.charAt(0) == '"') {
+					value = value.substring(1, value.length() - 1);
+				}
+				try {
+					return Math.max(0, Long.parseLong(value));
+				} catch (NumberFormatException e) {
+					return -1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return HTTP日期对应的毫秒数，格式不正确时返回-1
+	 */
+	private static long parseHttpDate(String value) {
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return DateTool.getDateFormat(HTTP_DATE_PATTERN, Locale.US).parse(value.trim()).getTime();
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+
+	private Entry get(String key) {
+		String fileName = getFileName(key);
+		synchronized (this) {
+			initialize();
+			Entry entry = memoryEntries.get(key);
+			if (entry != null) {
+				// 同时更新磁盘索引的访问顺序，否则常用的缓存反而会先从磁盘上淘汰
+				diskEntries.get(fileName);
+				return entry;
+			}
+			if (diskEntries.get(fileName) == null) {
+				return null;
+			}
+		}
+
+		File file = new File(directory, fileName);
+		Entry entry = readEntry(file);
+		if (entry == null || !entry.url.equals(key)) {
+			synchronized (this) {
+				removeFile(fileName);
+			}
+			return null;
+		}
+		// 更新修改时间，重新启动后按它恢复LRU顺序
+		file.setLastModified(System.currentTimeMillis());
+		synchronized (this) {
+			putMemory(entry);
+		}
+		return entry;
+	}
+
+	private void put(String key, Entry entry) {
+		String fileName = getFileName(key);
+		synchronized (this) {
+			initialize();
+			putMemory(entry);
+		}
+
+		// 先写临时文件再改名，写到一半崩溃也不会留下损坏的缓存
+		File temp = new File(directory, fileName + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+		File file = new File(directory, fileName);
+		if (!writeEntry(entry, temp) || !temp.renameTo(file)) {
+			temp.delete();
+			return;
+		}
+		synchronized (this) {
+			Long oldSize = diskEntries.put(fileName, file.length());
+			if (oldSize != null) {
+				diskBytes -= oldSize;
+			}
+			diskBytes += file.length();
+			trimDisk();
+		}
+	}
+
+	/**
+	 * 删除某个URL的缓存
+	 */
+	public void remove(String url) {
+		String fileName = getFileName(url);
+		synchronized (this) {
+			initialize();
+			Entry entry = memoryEntries.remove(url);
+			if (entry != null) {
+				memoryBytes -= entry.body.length;
+			}
+			removeFile(fileName);
+		}
+	}
+
+	/**
+	 * 清空内存和磁盘缓存
+	 */
+	public synchronized void evictAll() {
+		initialize();
+		memoryEntries.clear();
+		memoryBytes = 0;
+		for (String fileName : new ArrayList<String>(diskEntries.keySet())) {
+			removeFile(fileName);
+		}
+	}
+
+	private void putMemory(Entry entry) {
+		// 先去掉旧的，新内容太大不放入内存时也不能继续返回旧内容
+		Entry old = memoryEntries.remove(entry.url);
+		if (old != null) {
+			memoryBytes -= old.body.length;
+		}
+		if (entry.body.length > maxMemoryBytes / 8) {
+			return;
+		}
+		memoryEntries.put(entry.url, entry);
+		memoryBytes += entry.body.length;
+		Iterator<Entry> iterator = memoryEntries.values().iterator();
+		while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+			memoryBytes -= iterator.next().body.length;
+			iterator.remove();
+		}
+	}
+
+	private void trimDisk() {
+		Iterator<Map.Entry<String, Long>> iterator = diskEntries.entrySet().iterator();
+		while (diskBytes > maxDiskBytes && iterator.hasNext()) {
+			Map.Entry<String, Long> eldest = iterator.next();
+			iterator.remove();
+			diskBytes -= eldest.getValue();
+			new File(directory, eldest.getKey()).delete();
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	private void removeFile(String fileName) {
+		Long size = diskEntries.remove(fileName);
+		if (size != null) {
+			diskBytes -= size;
+		}
+		new File(directory, fileName).delete();
+	}
+
+	/**
+	 * 第一次使用时扫描缓存文件夹，按修改时间恢复LRU顺序，并删除上次没有写完的临时文件
+	 */
+	private void initialize() {
+		if (initialized) {
+			return;
+		}
+		initialized = true;
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		final long[] modified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			modified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return modified[a] < modified[b] ? -1 : (modified[a] == modified[b] ? 0 : 1);
+			}
+		});
+		for (Integer index : order) {
+			File file = files[index];
+			String name = file.getName();
+			if (name.endsWith(ENTRY_SUFFIX)) {
+				long length = file.length();
+				diskEntries.put(name, length);
+				diskBytes += length;
+			} else if (name.endsWith(TEMP_SUFFIX)) {
+				file.delete();
+			}
+		}
+		trimDisk();
+	}
+
+	private static String getFileName(String url) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder(digest.length * 2 + ENTRY_SUFFIX.length());
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return name.append(ENTRY_SUFFIX).toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static boolean writeEntry(Entry entry, File file) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			out.writeInt(MAGIC);
+			out.writeUTF(entry.url);
+			out.writeInt(entry.code);
+			out.writeUTF(entry.message);
+			out.writeLong(entry.receivedAt);
+			int count = 0;
+			for (List<String> values : entry.headers.values()) {
+				count += values.size();
+			}
+			out.writeInt(count);
+			for (Map.Entry<String, List<String>> header : entry.headers.entrySet()) {
+				for (String value : header.getValue()) {
+					out.writeUTF(header.getKey());
+					out.writeUTF(value);
+				}
+			}
+			out.writeInt(entry.body.length);
+			out.write(entry.body);
+			out.close();
+			out = null;
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			closeQuietly(out);
+		}
+	}
+
+	private static Entry readEntry(File file) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC) {
+				return null;
+			}
+			String url = in.readUTF();
+			int code = in.readInt();
+			String message = in.readUTF();
+			long receivedAt = in.readLong();
+			int count = in.readInt();
+			Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+			for (int i = 0; i < count; i++) {
+				addHeader(headers, in.readUTF(), in.readUTF());
+			}
+			byte[] body = new byte[in.readInt()];
+			in.readFully(body);
+			return new Entry(url, code, message, headers, receivedAt, body);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	private static void addHeader(Map<String, List<String>> headers, String name, String value) {
+		List<String> values = headers.get(name);
+		if (values == null) {
+			values = new ArrayList<String>(1);
+			headers.put(name, values);
+		}
+		values.add(value);
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// 关闭失败时无需处理
+			}
+		}
+	}
+
+	/**
+	 * @return 经过缓存的请求总数
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return 直接使用缓存、没有访问网络的次数
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return 向服务器确认后(304)使用缓存的次数
+	 */
+	public long getConditionalHitCount() {
+		return conditionalHitCount.get();
+	}
+
+	/**
+	 * @return 从网络获取完整响应的次数
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return 超过大小上限而被删除的磁盘缓存数
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return 命中率(包括304确认后使用缓存的情况)，没有请求时返回0
+	 */
+	public double getHitRate() {
+		long requests = requestCount.get();
+		return requests == 0 ? 0 : (double) (hitCount.get() + conditionalHitCount.get()) / requests;
+	}
+
+	/**
+	 * @return 磁盘缓存占用的字节数
+	 */
+	public synchronized long getDiskSize() {
+		initialize();
+		return diskBytes;
+	}
+
+	/**
+	 * @return 内存缓存占用的字节数
+	 */
+	public synchronized long getMemorySize() {
+		return memoryBytes;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * 一条缓存的响应
+	 */
+	private static class Entry {
+		final String url;
+		final int code;
+		final String message;
+		/** 响应头，key为小写，Content-Length为缓存内容的实际长度 */
+		final Map<String, List<String>> headers;
+		/** 发出请求的时间，用于计算缓存的年龄 */
+		final long receivedAt;
+		final byte[] body;
+
+		Entry(String url, int code, String message, Map<String, List<String>> headers, long receivedAt, byte[] body) {
+			this.url = url;
+			this.code = code;
+			this.message = message;
+			Map<String, List<String>> copy = new LinkedHashMap<String, List<String>>(headers);
+			copy.remove("transfer-encoding");
+			copy.put("content-length", Collections.singletonList(String.valueOf(body.length)));
+			this.headers = copy;
+			this.receivedAt = receivedAt;
+			this.body = body;
+		}
+
+		String getHeader(String name) {
+			List<String> values = headers.get(name);
+			return values == null || values.isEmpty() ? null : values.get(0);
+		}
+
+		/**
+		 * @return 缓存的有效期(毫秒)，0表示每次都要向服务器确认
+		 */
+		long getFreshnessLifetime() {
+			String cacheControl = getHeader("cache-control");
+			if (hasDirective(cacheControl, "no-cache")) {
+				return 0;
+			}
+			long maxAge = getSeconds(cacheControl, "max-age");
+			if (maxAge >= 0) {
+				return maxAge * 1000;
+			}
+			long date = parseHttpDate(getHeader("date"));
+			long served = date != -1 ? date : receivedAt;
+			long expires = parseHttpDate(getHeader("expires"));
+			if (expires != -1) {
+				return Math.max(0, expires - served);
+			}
+			long lastModified = parseHttpDate(getHeader("last-modified"));
+			if (lastModified != -1 && lastModified < served) {
+				// 常用的启发式规则：有效期为距离上次修改时间的10%
+				return Math.min((served - lastModified) / 10, MAX_HEURISTIC_LIFETIME);
+			}
+			return 0;
+		}
+
+		boolean isFresh(long now) {
+			long age = Math.max(0, now - receivedAt);
+			String ageHeader = getHeader("age");
+			if (ageHeader != null) {
+				try {
+					age += Math.max(0, Long.parseLong(ageHeader.trim())) * 1000;
+				} catch (NumberFormatException e) {
+					// 忽略格式错误的Age
+				}
+			}
+			return age < getFreshnessLifetime();
+		}
+
+		/**
+		 * 服务器返回304后，用新的响应头更新缓存，内容保持不变
+		 */
+		Entry revalidate(Map<String, List<String>> newHeaders, long now) {
+			Map<String, List<String>> merged = new LinkedHashMap<String, List<String>>(headers);
+			// receivedAt重新从now开始计算，旧的Age已经包含在之前的年龄里，只有304带了Age时才使用新值
+			merged.remove("age");
+			for (Map.Entry<String, List<String>> header : newHeaders.entrySet()) {
+				String name = header.getKey();
+				if (!"content-length".equals(name) && !"content-encoding".equals(name)
+						&& !"transfer-encoding".equals(name)) {
+					merged.put(name, header.getValue());
+				}
+			}
+			return new Entry(url, code, message, merged, now, body);
+		}
+
+		HttpResponse toResponse() {
+			InputStream content = body.length == 0 ? null : new ByteArrayInputStream(body);
+			return new HttpResponse(code, message, headers, content, content, new HttpResponse.Releaser() {
+				@Override
+				public void release(boolean reusable) {
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.itant.androidtool.network;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 由{@link AsyncHttpClient}提交的一次异步请求，可以通过{@link Future}的方法等待结果或者取消。
+ * 取消正在进行的请求时会直接关闭它所使用的连接，阻塞中的读写会立即失败
+ * @author iTant
+ *
+ * @param <T> 请求结果的类型
+ */
+public class HttpCall<T> extends FutureTask<T> {
+
+	private final HttpRequest request;
+	private final AsyncHttpClient.Callback<T> callback;
+	private final AsyncHttpClient client;
+
+	/** 请求的主机，用于限制同一主机的并发数 */
+	final String host;
+
+	/** 当前使用的连接，取消时关闭 */
+	private HttpConnection connection;
+	private boolean canceled;
+	private volatile boolean timedOut;
+
+	/** 超时后取消请求的定时任务 */
+	volatile Future<?> timeoutTask;
+
+	HttpCall(AsyncHttpClient client, HttpRequest request, AsyncHttpClient.ResponseHandler<T> handler,
+			AsyncHttpClient.Callback<T> callback) {
+		this(new Task<T>(client, request, handler), client, request, callback);
+	}
+
+	private HttpCall(Task<T> task, AsyncHttpClient client, HttpRequest request, AsyncHttpClient.Callback<T> callback) {
+		super(task);
+		task.call = this;
+		this.client = client;
+		this.request = request;
+		this.callback = callback;
+		this.host = request.getUrl().getHost().toLowerCase();
+	}
+
+	public HttpRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * @return 是否因为超过{@link HttpRequest#getCallTimeout()}而被取消
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	@Override
+	public void run() {
+		try {
+			super.run();
+		} finally {
+			client.finished(this);
+		}
+	}
+
+	/**
+	 * 取消请求。正在进行的请求会关闭连接，参数mayInterruptIfRunning对此没有影响
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		synchronized (this) {
+			canceled = true;
+		}
+		// 先标记为已取消，再关闭连接，这样结果是取消而不是连接异常
+		boolean result = super.cancel(mayInterruptIfRunning);
+		synchronized (this) {
+			if (connection != null) {
+				connection.close();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 线程池拒绝执行时以异常结束请求
+	 */
+	void reject(Throwable e) {
+		setException(new IOException("request rejected by executor", e));
+		client.finished(this);
+	}
+
+	void timeout() {
+		if (!isDone()) {
+			timedOut = true;
+			cancel(false);
+		}
+	}
+
+	/**
+	 * 开始使用一条连接，请求已被取消时抛出异常
+	 */
+	synchronized void attach(HttpConnection connection) throws IOException {
+		if (canceled) {
+			connection.close();
+			throw new IOException("Canceled");
+		}
+		this.connection = connection;
+	}
+
+	/**
+	 * 连接即将归还到连接池，之后取消请求不能再关闭它
+	 */
+	synchronized void detach() {
+		connection = null;
+	}
+
+	/**
+	 * 与{@link #isCancelled()}不同，在cancel()关闭连接之前就已经为true，用于判断连接异常是否由取消引起
+	 */
+	synchronized boolean wasCanceled() {
+		return canceled;
+	}
+
+	@Override
+	protected void done() {
+		Future<?> task = timeoutTask;
+		if (task != null) {
+			task.cancel(false);
+		}
+		if (callback == null) {
+			return;
+		}
+		if (isCancelled()) {
+			callback.onFailure(timedOut ? new SocketTimeoutException("call timeout") : new IOException("Canceled"));
+			return;
+		}
+		T result;
+		try {
+			result = get();
+		} catch (InterruptedException e) {
+			// 已经完成，不会发生
+			return;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			callback.onFailure(cause instanceof IOException ? (IOException) cause : new IOException(cause));
+			return;
+		}
+		callback.onSuccess(result);
+	}
+
+	/**
+	 * 在工作线程中执行请求，并用handler把响应转换为结果
+	 */
+	private static class Task<T> implements Callable<T> {
+		private final AsyncHttpClient client;
+		private final HttpRequest request;
+		private final AsyncHttpClient.ResponseHandler<T> handler;
+		HttpCall<T> call;
+
+		Task(AsyncHttpClient client, HttpRequest request, AsyncHttpClient.ResponseHandler<T> handler) {
+			this.client = client;
+			this.request = request;
+			this.handler = handler;
+		}
+
+		@Override
+		public T call() throws Exception {
+			HttpResponse response = client.getHttpClient().execute(request, call);
+			try {
+				return handler.handle(response);
+			} finally {
+				response.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,523 @@
+package com.itant.androidtool.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 基于连接池的HTTP/1.1客户端。
+ * 与每次新建HttpURLConnection并disconnect()不同，请求结束后连接会被归还到{@link ConnectionPool}，
+ * 同一主机的后续请求直接复用，省去TCP和TLS握手。可以被多个线程同时使用
+ * @author iTant
+ *
+ */
+public class HttpClient {
+
+	/** 最多跟随的重定向次数 */
+	private static final int MAX_REDIRECTS = 5;
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final ConnectionPool connectionPool;
+
+	private volatile SSLSocketFactory sslSocketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+	private volatile HostnameVerifier hostnameVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+	private volatile boolean followRedirects = true;
+
+	private volatile boolean transparentCompression = true;
+	private volatile HttpCache cache;
+
+	private final AtomicLong requestCount = new AtomicLong();
+
+	/** 响应体在网络上传输的字节数(解压前) */
+	private final AtomicLong responseWireBytes = new AtomicLong();
+	/** 响应体解压后的字节数 */
+	private final AtomicLong responseDecodedBytes = new AtomicLong();
+	/** 请求体压缩前的字节数 */
+	private final AtomicLong requestRawBytes = new AtomicLong();
+	/** 请求体在网络上传输的字节数(压缩后，不含chunked分块信息) */
+	private final AtomicLong requestWireBytes = new AtomicLong();
+
+	public HttpClient() {
+		this(new ConnectionPool());
+	}
+
+	/**
+	 * @param connectionPool 使用的连接池，可以在多个HttpClient之间共享
+	 */
+	public HttpClient(ConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+
+	private static class ClientProvider {
+		private static HttpClient instance = new HttpClient();
+	}
+
+	/**
+	 * @return 共享的HttpClient，NetworkTool的请求方法都使用该实例
+	 */
+	public static HttpClient getDefault() {
+		return ClientProvider.instance;
+	}
+
+	public ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	public void setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
+		this.sslSocketFactory = sslSocketFactory;
+	}
+
+	public void setHostnameVerifier(HostnameVerifier hostnameVerifier) {
+		this.hostnameVerifier = hostnameVerifier;
+	}
+
+	/**
+	 * @param followRedirects GET和HEAD请求是否自动跟随3xx重定向，默认为true
+	 */
+	public void setFollowRedirects(boolean followRedirects) {
+		this.followRedirects = followRedirects;
+	}
+
+	/**
+	 * @param transparentCompression 请求没有指定Accept-Encoding时是否自动声明支持gzip和deflate，
+	 *                               并在读取时透明解压响应体，默认为true
+	 */
+	public void setTransparentCompression(boolean transparentCompression) {
+		this.transparentCompression = transparentCompression;
+	}
+
+	/**
+	 * @param cache GET请求使用的缓存，null表示不使用缓存(默认)
+	 */
+	public void setCache(HttpCache cache) {
+		this.cache = cache;
+	}
+
+	public HttpCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @return 响应体在网络上传输的总字节数(解压前)
+	 */
+	public long getResponseWireBytes() {
+		return responseWireBytes.get();
+	}
+
+	/**
+	 * @return 调用者读到的响应体总字节数(解压后)，与{@link #getResponseWireBytes()}之比即为压缩比
+	 */
+	public long getResponseDecodedBytes() {
+		return responseDecodedBytes.get();
+	}
+
+	/**
+	 * @return 请求体压缩前的总字节数
+	 */
+	public long getRequestRawBytes() {
+		return requestRawBytes.get();
+	}
+
+	/**
+	 * @return 请求体在网络上传输的总字节数(压缩后)
+	 */
+	public long getRequestWireBytes() {
+		return requestWireBytes.get();
+	}
+
+	/**
+	 * @return 执行过的请求总数(不含重定向和重试)
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * 执行请求。返回的响应使用完毕后必须关闭，否则连接无法归还
+	 *
+	 * @param request 请求
+	 * @return 响应，任何状态码都会正常返回
+	 * @throws IOException 网络异常或者协议错误
+	 */
+	public HttpResponse execute(HttpRequest request) throws IOException {
+		return execute(request, null);
+	}
+
+	/**
+	 * @param call 异步请求，用于取消时关闭正在使用的连接，同步执行时为null
+	 */
+	HttpResponse execute(HttpRequest request, HttpCall<?> call) throws IOException {
+		requestCount.incrementAndGet();
+		HttpCache cache = this.cache;
+		if (cache != null && "GET".equals(request.getMethod())) {
+			return cache.execute(this, request, call);
+		}
+		return executeNetwork(request, call);
+	}
+
+	/**
+	 * 不经过缓存，直接通过网络执行请求
+	 */
+	HttpResponse executeNetwork(HttpRequest request, HttpCall<?> call) throws IOException {
+		URL url = request.getUrl();
+		String method = request.getMethod();
+		for (int redirects = 0;; redirects++) {
+			HttpResponse response = executeOnce(request, url, call);
+			String location = response.getHeader("Location");
+			if (!followRedirects || redirects >= MAX_REDIRECTS || location == null || !isRedirect(response.getCode())
+					|| !("GET".equals(method) || "HEAD".equals(method))) {
+				return response;
+			}
+
+			URL target = new URL(url, location);
+			String protocol = target.getProtocol();
+			if (!"http".equalsIgnoreCase(protocol) && !"https".equalsIgnoreCase(protocol)) {
+				return response;
+			}
+			// 不允许从https降级到http
+			if ("https".equalsIgnoreCase(url.getProtocol()) && !"https".equalsIgnoreCase(protocol)) {
+				return response;
+			}
+			response.close();
+			if (!sameOrigin(url, target)) {
+				// 跳转到其他主机时不能带上调用者的凭据和Host
+				request = request.copy();
+				request.removeHeader("Authorization");
+				request.removeHeader("Cookie");
+				request.removeHeader("Host");
+			}
+			url = target;
+		}
+	}
+
+	private static boolean sameOrigin(URL a, URL b) {
+		int portA = a.getPort() == -1 ? a.getDefaultPort() : a.getPort();
+		int portB = b.getPort() == -1 ? b.getDefaultPort() : b.getPort();
+		return a.getHost().equalsIgnoreCase(b.getHost()) && portA == portB;
+	}
+
+	private static boolean isRedirect(int code) {
+		return code == 301 || code == 302 || code == 303 || code == 307 || code == 308;
+	}
+
+	/**
+	 * 在一条连接上完成一次请求。复用的连接可能已被服务器关闭，此时换一条新连接重发一次
+	 */
+	private HttpResponse executeOnce(HttpRequest request, URL url, HttpCall<?> call) throws IOException {
+		String route = HttpConnection.getRoute(url);
+		RequestBody body = request.getBody();
+		boolean retried = false;
+		while (true) {
+			HttpConnection connection = connectionPool.acquire(route, request.getConnectTimeout());
+			boolean reused = connection != null;
+			if (connection == null) {
+				try {
+					connection = HttpConnection.open(url, route, request.getConnectTimeout(), sslSocketFactory,
+							hostnameVerifier);
+				} catch (IOException e) {
+					connectionPool.cancelReservation(route);
+					throw e;
+				} catch (RuntimeException e) {
+					connectionPool.cancelReservation(route);
+					throw e;
+				}
+			}
+			connection.requestCount++;
+
+			String statusLine;
+			boolean transparent;
+			try {
+				if (call != null) {
+					call.attach(connection);
+				}
+				connection.setReadTimeout(request.getReadTimeout());
+				transparent = writeRequest(connection.out, request, url);
+				statusLine = connection.readLine();
+			} catch (IOException e) {
+				release(connection, call, false);
+				if (call != null && call.wasCanceled()) {
+					throw e;
+				}
+				if (reused && !retried && !(e instanceof SocketTimeoutException)
+						&& (body == null || body.isRepeatable())) {
+					retried = true;
+					continue;
+				}
+				throw e;
+			}
+
+			try {
+				return readResponse(connection, request, call, statusLine, transparent);
+			} catch (IOException e) {
+				release(connection, call, false);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * @return 是否由客户端添加了Accept-Encoding，此时需要透明解压响应体
+	 */
+	private boolean writeRequest(OutputStream out, HttpRequest request, URL url) throws IOException {
+		StringBuilder head = new StringBuilder(256);
+		head.append(request.getMethod()).append(' ');
+		appendTarget(url, head);
+		head.append(" HTTP/1.1\r\n");
+		if (request.getHeader("Host") == null) {
+			head.append("Host: ").append(url.getHost());
+			if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+				head.append(':').append(url.getPort());
+			}
+			head.append("\r\n");
+		}
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			// getHeaders()返回的Map可以直接修改，写出前再检查一次
+			HttpRequest.checkHeader(header.getKey(), header.getValue());
+			head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+		// 调用者自己指定了Accept-Encoding或者Range时由调用者处理响应体
+		boolean transparent = transparentCompression && request.getHeader("Accept-Encoding") == null
+				&& request.getHeader("Range") == null;
+		if (transparent) {
+			head.append("Accept-Encoding: gzip, deflate\r\n");
+		}
+
+		RequestBody body = request.getBody();
+		long contentLength = -1;
+		if (body != null) {
+			contentLength = body.getContentLength();
+			if (body.getContentType() != null) {
+				HttpRequest.checkHeader("Content-Type", body.getContentType());
+			}
+			if (body.getContentEncoding() != null) {
+				HttpRequest.checkHeader("Content-Encoding", body.getContentEncoding());
+			}
+			if (body.getContentType() != null && request.getHeader("Content-Type") == null) {
+				head.append("Content-Type: ").append(body.getContentType()).append("\r\n");
+			}
+			if (body.getContentEncoding() != null && request.getHeader("Content-Encoding") == null) {
+				head.append("Content-Encoding: ").append(body.getContentEncoding()).append("\r\n");
+			}
+			if (contentLength >= 0) {
+				head.append("Content-Length: ").append(contentLength).append("\r\n");
+			} else {
+				head.append("Transfer-Encoding: chunked\r\n");
+			}
+		} else if ("POST".equals(request.getMethod()) || "PUT".equals(request.getMethod())) {
+			head.append("Content-Length: 0\r\n");
+		}
+		head.append("\r\n");
+		out.write(head.toString().getBytes("ISO-8859-1"));
+
+		if (body != null) {
+			OutputStream framed = contentLength >= 0 ? new HttpConnection.FixedLengthOutputStream(out, contentLength)
+					: new HttpConnection.ChunkedOutputStream(out);
+			OutputStream bodyOut = new HttpConnection.CountingOutputStream(framed, requestWireBytes);
+			if (body instanceof RequestBody.CompressedBody) {
+				((RequestBody.CompressedBody) body).writeTo(bodyOut, requestRawBytes);
+			} else {
+				body.writeTo(new HttpConnection.CountingOutputStream(bodyOut, requestRawBytes));
+			}
+			// chunked写出结尾，固定长度检查是否写完
+			framed.close();
+		}
+		out.flush();
+		return transparent;
+	}
+
+	/**
+	 * 写出请求行中的路径和查询参数，空格、控制字符和非ASCII字符按UTF-8转义，
+	 * 否则写出时会被ISO-8859-1替换成'?'，或者在请求行中插入CRLF
+	 */
+	private static void appendTarget(URL url, StringBuilder head) throws IOException {
+		String file = url.getFile();
+		if (file.length() == 0) {
+			head.append('/');
+			return;
+		}
+		int size = file.length();
+		for (int i = 0; i < size; i++) {
+			char c = file.charAt(i);
+			if (c > 0x20 && c < 0x7f) {
+				head.append(c);
+				continue;
+			}
+			int end = i + 1;
+			if (Character.isHighSurrogate(c) && end < size && Character.isLowSurrogate(file.charAt(end))) {
+				end++;
+			}
+			for (byte b : file.substring(i, end).getBytes("UTF-8")) {
+				head.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+			}
+			i = end - 1;
+		}
+	}
+
+	private HttpResponse readResponse(final HttpConnection connection, HttpRequest request, final HttpCall<?> call,
+			String statusLine, boolean transparent) throws IOException {
+		Map<String, List<String>> headers;
+		int code;
+		String message;
+		boolean http10;
+		while (true) {
+			// 状态行形如"HTTP/1.1 200 OK"
+			if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+				throw new ProtocolException("unexpected status line: " + statusLine);
+			}
+			http10 = statusLine.charAt(7) == '0';
+			try {
+				code = Integer.parseInt(statusLine.substring(9, 12));
+			} catch (NumberFormatException e) {
+				throw new ProtocolException("unexpected status line: " + statusLine);
+			}
+			message = statusLine.length() > 13 ? statusLine.substring(13) : "";
+			headers = readHeaders(connection);
+			// 跳过100 Continue之类的临时响应
+			if (code >= 200 || code == 101) {
+				break;
+			}
+			statusLine = connection.readLine();
+		}
+
+		String connectionHeader = first(headers, "connection");
+		final boolean keepAlive = http10 ? "keep-alive".equalsIgnoreCase(connectionHeader)
+				: !"close".equalsIgnoreCase(connectionHeader);
+
+		InputStream content;
+		boolean framed = true;
+		if ("HEAD".equals(request.getMethod()) || code == 204 || code == 304 || code < 200) {
+			content = null;
+		} else if ("chunked".equalsIgnoreCase(first(headers, "transfer-encoding"))) {
+			content = new HttpConnection.ChunkedInputStream(connection.in);
+		} else if (first(headers, "content-length") != null) {
+			long length;
+			try {
+				length = Long.parseLong(first(headers, "content-length").trim());
+			} catch (NumberFormatException e) {
+				throw new ProtocolException("invalid Content-Length: " + first(headers, "content-length"));
+			}
+			if (length < 0) {
+				throw new ProtocolException("invalid Content-Length: " + length);
+			}
+			content = length == 0 ? null : new HttpConnection.FixedLengthInputStream(connection.in, length);
+		} else {
+			// 没有长度信息，读到连接关闭为止，连接不能复用
+			content = connection.in;
+			framed = false;
+		}
+
+		InputStream decoded = null;
+		if (content != null) {
+			decoded = new HttpConnection.CountingInputStream(new HttpConnection.NonClosingInputStream(content),
+					responseWireBytes);
+			String encoding = first(headers, "content-encoding");
+			if (transparent && encoding != null) {
+				InputStream decoder = createDecoder(decoded, encoding.trim());
+				if (decoder != null) {
+					// 解压后长度未知，去掉这两个头以免调用者按压缩后的长度处理
+					decoded = decoder;
+					headers.remove("content-encoding");
+					headers.remove("content-length");
+				}
+			}
+			decoded = new HttpConnection.CountingInputStream(decoded, responseDecodedBytes);
+		}
+
+		final boolean reusable = keepAlive && framed;
+		return new HttpResponse(code, message, headers, content, decoded, new HttpResponse.Releaser() {
+			@Override
+			public void release(boolean completed) {
+				HttpClient.this.release(connection, call, completed && reusable);
+			}
+		});
+	}
+
+	private void release(HttpConnection connection, HttpCall<?> call, boolean reusable) {
+		if (call != null) {
+			call.detach();
+		}
+		connectionPool.release(connection, reusable);
+	}
+
+	/**
+	 * @return 解压流，不支持的编码返回null
+	 */
+	private static InputStream createDecoder(InputStream in, String encoding) throws IOException {
+		if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+			return new GZIPInputStream(in, 8 * 1024);
+		}
+		if (!"deflate".equalsIgnoreCase(encoding)) {
+			return null;
+		}
+		// 标准的deflate是zlib格式，但有些服务器发送不带zlib头的原始deflate数据，根据前两个字节判断
+		PushbackInputStream pushback = new PushbackInputStream(in, 2);
+		byte[] header = new byte[2];
+		int read = 0;
+		while (read < 2) {
+			int count = pushback.read(header, read, 2 - read);
+			if (count == -1) {
+				break;
+			}
+			read += count;
+		}
+		pushback.unread(header, 0, read);
+		boolean zlib = read == 2 && (header[0] & 0x0F) == 8
+				&& (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+		final Inflater inflater = new Inflater(!zlib);
+		return new InflaterInputStream(pushback, inflater, 8 * 1024) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+		};
+	}
+
+	private static Map<String, List<String>> readHeaders(HttpConnection connection) throws IOException {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		String line;
+		int count = 0;
+		while ((line = connection.readLine()).length() > 0) {
+			if (++count > HttpConnection.MAX_HEADER_COUNT) {
+				throw new ProtocolException("too many response headers");
+			}
+			int colon = line.indexOf(':');
+			if (colon <= 0) {
+				continue;
+			}
+			String name = line.substring(0, colon).trim().toLowerCase();
+			List<String> values = headers.get(name);
+			if (values == null) {
+				values = new ArrayList<String>(1);
+				headers.put(name, values);
+			}
+			values.add(line.substring(colon + 1).trim());
+		}
+		return headers;
+	}
+
+	private static String first(Map<String, List<String>> headers, String name) {
+		List<String> values = headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+}
@@ -0,0 +1,476 @@
+package com.itant.androidtool.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 一条到服务器的HTTP/1.1连接，可以在多个请求之间复用
+ * @author iTant
+ *
+ */
+final class HttpConnection {
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	/** 状态行、响应头和块大小行的最大长度，防止异常的服务器让客户端无限制地占用内存 */
+	static final int MAX_LINE_LENGTH = 8 * 1024;
+
+	/** 响应头(包括chunked的trailer)的最大行数 */
+	static final int MAX_HEADER_COUNT = 256;
+
+	/** 连接所属的路由，形如"https://host:443" */
+	final String route;
+
+	private final Socket socket;
+	final InputStream in;
+	final OutputStream out;
+
+	/** 进入空闲状态的时间，用于淘汰长时间空闲的连接 */
+	long idleSince;
+
+	/** 在这条连接上发出的请求数 */
+	int requestCount;
+
+	private HttpConnection(String route, Socket socket) throws IOException {
+		this.route = route;
+		this.socket = socket;
+		in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+		out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+	}
+
+	/**
+	 * 建立到url所在服务器的连接
+	 */
+	static HttpConnection open(URL url, String route, int connectTimeout, SSLSocketFactory sslSocketFactory,
+			HostnameVerifier hostnameVerifier) throws IOException {
+		String host = getHost(url);
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(host, getPort(url)), connectTimeout);
+			if ("https".equalsIgnoreCase(url.getProtocol())) {
+				SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, getPort(url), true);
+				socket = sslSocket;
+				sslSocket.startHandshake();
+				if (!hostnameVerifier.verify(host, sslSocket.getSession())) {
+					throw new SSLPeerUnverifiedException("hostname " + host + " not verified");
+				}
+			}
+			return new HttpConnection(route, socket);
+		} catch (IOException e) {
+			closeQuietly(socket);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return 不带方括号的主机名
+	 */
+	static String getHost(URL url) {
+		String host = url.getHost();
+		if (host.startsWith("[") && host.endsWith("]")) {
+			host = host.substring(1, host.length() - 1);
+		}
+		return host;
+	}
+
+	static int getPort(URL url) {
+		int port = url.getPort();
+		if (port != -1) {
+			return port;
+		}
+		return "https".equalsIgnoreCase(url.getProtocol()) ? 443 : 80;
+	}
+
+	/**
+	 * @return url对应的路由，协议、主机和端口都相同的请求可以共用连接
+	 */
+	static String getRoute(URL url) {
+		return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + getPort(url);
+	}
+
+	void setReadTimeout(int readTimeout) throws IOException {
+		socket.setSoTimeout(readTimeout);
+	}
+
+	boolean isClosed() {
+		return socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown();
+	}
+
+	void close() {
+		closeQuietly(socket);
+	}
+
+	/**
+	 * 读取一行ASCII文本(不含行尾的CRLF)
+	 *
+	 * @throws ProtocolException 超过{@link #MAX_LINE_LENGTH}
+	 */
+	String readLine() throws IOException {
+		return readLine(in);
+	}
+
+	static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder(64);
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c == '\n') {
+				int length = sb.length();
+				if (length > 0 && sb.charAt(length - 1) == '\r') {
+					sb.setLength(length - 1);
+				}
+				return sb.toString();
+			}
+			if (sb.length() == MAX_LINE_LENGTH) {
+				throw new ProtocolException("line longer than " + MAX_LINE_LENGTH + " bytes");
+			}
+			sb.append((char) c);
+		}
+		throw new EOFException("unexpected end of stream");
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// 关闭失败时无需处理
+		}
+	}
+
+	/**
+	 * 读取固定长度(Content-Length)的响应体
+	 */
+	static class FixedLengthInputStream extends InputStream {
+		private final InputStream in;
+		private long remaining;
+
+		FixedLengthInputStream(InputStream in, long length) {
+			this.in = in;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException("unexpected end of stream, " + remaining + " bytes remaining");
+			}
+			remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			int read = in.read(buffer, offset, (int) Math.min(count, remaining));
+			if (read == -1) {
+				throw new EOFException("unexpected end of stream, " + remaining + " bytes remaining");
+			}
+			remaining -= read;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(in.available(), remaining);
+		}
+
+		long remaining() {
+			return remaining;
+		}
+	}
+
+	/**
+	 * 读取chunked编码的响应体
+	 */
+	static class ChunkedInputStream extends InputStream {
+		private final InputStream in;
+		/** 当前块剩余的字节数，-1表示需要读取下一个块的长度 */
+		private long chunkRemaining = -1;
+		private boolean finished;
+
+		ChunkedInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			if (finished) {
+				return -1;
+			}
+			if (chunkRemaining <= 0) {
+				nextChunk();
+				if (finished) {
+					return -1;
+				}
+			}
+			int read = in.read(buffer, offset, (int) Math.min(count, chunkRemaining));
+			if (read == -1) {
+				throw new EOFException("unexpected end of chunked stream");
+			}
+			chunkRemaining -= read;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return finished || chunkRemaining <= 0 ? 0 : (int) Math.min(in.available(), chunkRemaining);
+		}
+
+		private void nextChunk() throws IOException {
+			if (chunkRemaining == 0) {
+				// 上一个块后面的CRLF
+				readLine(in);
+			}
+			String line = readLine(in);
+			int extension = line.indexOf(';');
+			if (extension >= 0) {
+				line = line.substring(0, extension);
+			}
+			try {
+				chunkRemaining = Long.parseLong(line.trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new ProtocolException("invalid chunk size: " + line);
+			}
+			if (chunkRemaining < 0) {
+				throw new ProtocolException("invalid chunk size: " + line);
+			}
+			if (chunkRemaining == 0) {
+				// 最后一个块，跳过trailer
+				int lines = 0;
+				while (readLine(in).length() > 0) {
+					if (++lines > MAX_HEADER_COUNT) {
+						throw new ProtocolException("too many trailer lines");
+					}
+				}
+				finished = true;
+			}
+		}
+
+		boolean isFinished() {
+			return finished;
+		}
+	}
+
+	/**
+	 * 以chunked编码写出长度未知的请求体，关闭时写出结束块但不关闭连接
+	 */
+	static class ChunkedOutputStream extends FilterOutputStream {
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private int count;
+		private boolean closed;
+
+		ChunkedOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buffer.length) {
+				writeChunk(buffer, 0, count);
+				count = 0;
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			if (count + length <= buffer.length) {
+				System.arraycopy(data, offset, buffer, count, length);
+				count += length;
+				return;
+			}
+			flushBuffer();
+			if (length >= buffer.length) {
+				writeChunk(data, offset, length);
+			} else {
+				System.arraycopy(data, offset, buffer, 0, length);
+				count = length;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushBuffer();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			flushBuffer();
+			out.write(new byte[] { '0', '\r', '\n', '\r', '\n' });
+			out.flush();
+		}
+
+		private void flushBuffer() throws IOException {
+			if (count > 0) {
+				writeChunk(buffer, 0, count);
+				count = 0;
+			}
+		}
+
+		private void writeChunk(byte[] data, int offset, int length) throws IOException {
+			out.write(Integer.toHexString(length).getBytes("US-ASCII"));
+			out.write('\r');
+			out.write('\n');
+			out.write(data, offset, length);
+			out.write('\r');
+			out.write('\n');
+		}
+	}
+
+	/**
+	 * 写出固定长度(Content-Length)的请求体，实际写出的字节数与声明的长度不一致时抛出异常，
+	 * 例如上传过程中文件被修改，否则服务器会把多出的字节当成下一个请求
+	 */
+	static class FixedLengthOutputStream extends FilterOutputStream {
+		private long remaining;
+
+		FixedLengthOutputStream(OutputStream out, long length) {
+			super(out);
+			this.remaining = length;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (remaining == 0) {
+				throw new ProtocolException("request body exceeds Content-Length");
+			}
+			out.write(b);
+			remaining--;
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			if (length > remaining) {
+				throw new ProtocolException("request body exceeds Content-Length by " + (length - remaining) + " bytes");
+			}
+			out.write(data, offset, length);
+			remaining -= length;
+		}
+
+		/**
+		 * 检查是否写完，不关闭连接的输出流
+		 */
+		@Override
+		public void close() throws IOException {
+			if (remaining != 0) {
+				throw new ProtocolException("request body is " + remaining + " bytes shorter than Content-Length");
+			}
+			flush();
+		}
+	}
+
+	/**
+	 * 统计读取字节数的输入流
+	 */
+	static class CountingInputStream extends FilterInputStream {
+		private final AtomicLong counter;
+
+		CountingInputStream(InputStream in, AtomicLong counter) {
+			super(in);
+			this.counter = counter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b != -1) {
+				counter.incrementAndGet();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			int read = in.read(buffer, offset, count);
+			if (read > 0) {
+				counter.addAndGet(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			counter.addAndGet(skipped);
+			return skipped;
+		}
+	}
+
+	/**
+	 * 统计写出字节数的输出流
+	 */
+	static class CountingOutputStream extends FilterOutputStream {
+		private final AtomicLong counter;
+
+		CountingOutputStream(OutputStream out, AtomicLong counter) {
+			super(out);
+			this.counter = counter;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			counter.incrementAndGet();
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			out.write(data, offset, length);
+			counter.addAndGet(length);
+		}
+
+		/**
+		 * 不关闭连接的输出流
+		 */
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+	/**
+	 * 关闭时不关闭底层流，用于在响应体或请求体外面套一层解压或压缩流
+	 */
+	static class NonClosingInputStream extends FilterInputStream {
+		NonClosingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package com.itant.androidtool.network;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 由{@link HttpClient}执行的HTTP请求
+ * @author iTant
+ *
+ */
+public class HttpRequest {
+	
+	private final String method;
+	private final URL url;
+	
+	/** 请求头，名字不区分大小写 */
+	private final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+	
+	private RequestBody body;
+	private int connectTimeout = 10 * 1000;
+	private int readTimeout = 10 * 1000;
+	private int callTimeout;
+	
+	/**
+	 * @param method 请求方法，如"GET"、"POST"
+	 * @param url 请求的网址，只支持http和https
+	 */
+	public HttpRequest(String method, URL url) {
+		String protocol = url.getProtocol();
+		if (!"http".equalsIgnoreCase(protocol) && !"https".equalsIgnoreCase(protocol)) {
+			throw new IllegalArgumentException("unsupported protocol: " + protocol);
+		}
+		if (!isToken(method)) {
+			throw new IllegalArgumentException("invalid method: " + method);
+		}
+		this.method = method;
+		this.url = url;
+	}
+	
+	/**
+	 * @param method 请求方法，如"GET"、"POST"
+	 * @param url 请求的网址，只支持http和https
+	 */
+	public HttpRequest(String method, String url) throws MalformedURLException {
+		this(method, new URL(url));
+	}
+	
+	public String getMethod() {
+		return method;
+	}
+	
+	public URL getUrl() {
+		return url;
+	}
+	
+	/**
+	 * 设置请求头，已有同名请求头时替换
+	 *
+	 * @throws IllegalArgumentException 名字或值中有控制字符(如CR、LF)，防止注入其他请求头
+	 */
+	public HttpRequest setHeader(String name, String value) {
+		checkHeader(name, value);
+		headers.put(name, value);
+		return this;
+	}
+	
+	/**
+	 * @return 请求头的值，没有时返回null
+	 */
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+	
+	public HttpRequest removeHeader(String name) {
+		headers.remove(name);
+		return this;
+	}
+	
+	/**
+	 * @return 所有请求头，名字不区分大小写
+	 */
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+	
+	public RequestBody getBody() {
+		return body;
+	}
+	
+	public HttpRequest setBody(RequestBody body) {
+		this.body = body;
+		return this;
+	}
+	
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	/**
+	 * @param connectTimeout 连接超时(毫秒)，0表示不超时
+	 */
+	public HttpRequest setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+		return this;
+	}
+	
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+	
+	/**
+	 * @param readTimeout 读取超时(毫秒)，0表示不超时
+	 */
+	public HttpRequest setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+		return this;
+	}
+	
+	public int getCallTimeout() {
+		return callTimeout;
+	}
+	
+	/**
+	 * 整个请求的超时，只对{@link AsyncHttpClient}提交的请求有效。从提交时开始计算(包括排队时间)，
+	 * 超时后请求会被取消
+	 * 
+	 * @param callTimeout 整个请求的超时(毫秒)，0表示不超时
+	 */
+	public HttpRequest setCallTimeout(int callTimeout) {
+		this.callTimeout = callTimeout;
+		return this;
+	}
+	
+	/**
+	 * @return 内容相同的新请求，修改它不会影响当前请求
+	 */
+	HttpRequest copy() {
+		HttpRequest copy = new HttpRequest(method, url);
+		copy.headers.putAll(headers);
+		copy.body = body;
+		copy.connectTimeout = connectTimeout;
+		copy.readTimeout = readTimeout;
+		copy.callTimeout = callTimeout;
+		return copy;
+	}
+
+	/**
+	 * 检查请求头的名字和值，名字只能是token，值中不能有除制表符以外的控制字符
+	 *
+	 * @throws IllegalArgumentException 不合法时
+	 */
+	static void checkHeader(String name, String value) {
+		if (!isToken(name)) {
+			throw new IllegalArgumentException("invalid header name: " + name);
+		}
+		if (value == null) {
+			throw new IllegalArgumentException("header value is null: " + name);
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ((c < 0x20 && c != '\t') || c == 0x7f) {
+				throw new IllegalArgumentException("invalid character 0x" + Integer.toHexString(c) + " in header " + name);
+			}
+		}
+	}
+
+	private static boolean isToken(String s) {
+		if (s == null || s.length() == 0) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c <= 0x20 || c >= 0x7f || "()<>@,;:\\\"/[]?={}".indexOf(c) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,482 @@
+package com.itant.androidtool.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.itant.androidtool.string.JsonTool;
+
+/**
+ * {@link HttpClient}返回的HTTP响应。
+ * 响应体读取完毕或者调用{@link #close()}后，连接会被归还到连接池，因此使用完毕后务必关闭
+ * @author iTant
+ *
+ */
+public class HttpResponse implements Closeable {
+
+	/** 不限制响应体的大小 */
+	public static final long NO_LIMIT = -1;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** 关闭时如果响应体剩余不超过该字节数，则读完剩余部分以便复用连接 */
+	private static final long MAX_DRAIN_BYTES = 64 * 1024;
+
+	private final int code;
+	private final String message;
+	private final Map<String, List<String>> headers;
+	private final BodyStream body;
+
+	/**
+	 * @param headers 响应头，key为小写
+	 * @param framed 按Content-Length或chunked分帧的原始响应体，null表示没有响应体
+	 * @param content 在framed之上解压、统计之后供调用者读取的流，没有解压时可以就是framed
+	 * @param releaser 归还连接的回调
+	 */
+	HttpResponse(int code, String message, Map<String, List<String>> headers, InputStream framed, InputStream content,
+			Releaser releaser) {
+		this.code = code;
+		this.message = message;
+		this.headers = Collections.unmodifiableMap(headers);
+		this.body = new BodyStream(framed, content, releaser);
+	}
+
+	/**
+	 * @return 状态码，如200
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * @return 状态描述，如"OK"
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return 状态码是否为2xx
+	 */
+	public boolean isSuccessful() {
+		return code >= 200 && code < 300;
+	}
+
+	/**
+	 * @return 所有响应头，key为小写
+	 */
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @param name 响应头名字，不区分大小写
+	 * @return 该响应头的第一个值，没有时返回null
+	 */
+	public String getHeader(String name) {
+		List<String> values = headers.get(name.toLowerCase());
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	/**
+	 * @return 响应体的输入流，读完或关闭后连接会被归还
+	 */
+	public InputStream getBody() {
+		return body;
+	}
+
+	/**
+	 * @return 响应头中的Content-Length，未知时返回-1
+	 */
+	public long getContentLength() {
+		String value = getHeader("Content-Length");
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return Content-Type中指定的字符集，没有指定时返回UTF-8
+	 */
+	public Charset getCharset() {
+		String contentType = getHeader("Content-Type");
+		if (contentType != null) {
+			int index = contentType.toLowerCase().indexOf("charset=");
+			if (index >= 0) {
+				String name = contentType.substring(index + "charset=".length());
+				int end = name.indexOf(';');
+				if (end >= 0) {
+					name = name.substring(0, end);
+				}
+				name = name.trim();
+				if (name.length() > 1 && name.charAt(0) == '"' && name.charAt(name.length() - 1) == '"') {
+					name = name.substring(1, name.length() - 1);
+				}
+				try {
+					return Charset.forName(name);
+				} catch (IllegalArgumentException e) {
+					// 不支持的字符集按UTF-8处理
+				}
+			}
+		}
+		return UTF_8;
+	}
+
+	/**
+	 * 读取全部响应体并关闭响应
+	 *
+	 * @return 响应体的字节
+	 */
+	public byte[] readBytes() throws IOException {
+		return readBytes(NO_LIMIT);
+	}
+
+	/**
+	 * 读取全部响应体并关闭响应。Content-Length已知时直接分配对应大小的数组，不需要先写入临时缓冲区
+	 *
+	 * @param maxBytes 响应体的最大字节数，超过时抛出{@link BodyTooLargeException}；{@link #NO_LIMIT}表示不限制
+	 * @return 响应体的字节
+	 */
+	public byte[] readBytes(long maxBytes) throws IOException {
+		try {
+			long contentLength = getContentLength();
+			checkContentLength(contentLength, maxBytes);
+			if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+				byte[] result = new byte[(int) contentLength];
+				int offset = 0;
+				while (offset < result.length) {
+					int read = body.read(result, offset, result.length - offset);
+					if (read == -1) {
+						throw new EOFException("unexpected end of stream");
+					}
+					offset += read;
+				}
+				// 再读一次确认到达结尾，这样连接可以立即归还，包装过的响应体也能知道内容已经读完
+				if (body.read() != -1) {
+					throw new ProtocolException("response body longer than Content-Length");
+				}
+				return result;
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			writeTo(out, maxBytes);
+			return out.toByteArray();
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * 读取全部响应体并按Content-Type中的字符集(默认UTF-8)解码，之后关闭响应。
+	 * 原样保留响应体的内容，不会改变换行符
+	 *
+	 * @return 响应体的文本
+	 */
+	public String readString() throws IOException {
+		return readString(NO_LIMIT);
+	}
+
+	/**
+	 * 读取全部响应体并按Content-Type中的字符集(默认UTF-8)解码，之后关闭响应
+	 *
+	 * @param maxBytes 响应体的最大字节数，超过时抛出{@link BodyTooLargeException}；{@link #NO_LIMIT}表示不限制
+	 * @return 响应体的文本
+	 */
+	public String readString(long maxBytes) throws IOException {
+		Charset charset = getCharset();
+		return new String(readBytes(maxBytes), charset);
+	}
+
+	/**
+	 * 将响应体写入输出流，使用池化的缓冲区，内存占用与响应体大小无关。写完后关闭响应，但不关闭out
+	 *
+	 * @param out 目标输出流，如文件输出流
+	 * @return 写入的字节数
+	 */
+	public long writeTo(OutputStream out) throws IOException {
+		return writeTo(out, NO_LIMIT);
+	}
+
+	/**
+	 * 将响应体写入输出流，使用池化的缓冲区，内存占用与响应体大小无关。写完后关闭响应，但不关闭out
+	 *
+	 * @param out 目标输出流，如文件输出流
+	 * @param maxBytes 响应体的最大字节数，超过时抛出{@link BodyTooLargeException}；{@link #NO_LIMIT}表示不限制
+	 * @return 写入的字节数
+	 */
+	public long writeTo(final OutputStream out, long maxBytes) throws IOException {
+		return consume(new ByteConsumer() {
+			@Override
+			public void accept(ByteBuffer buffer) throws IOException {
+				out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			}
+		}, maxBytes);
+	}
+
+	/**
+	 * 分块读取响应体交给consumer处理，使用池化的缓冲区，内存占用与响应体大小无关。处理完后关闭响应
+	 *
+	 * @param consumer 处理每一块数据，传入的ByteBuffer只在回调期间有效
+	 * @param maxBytes 响应体的最大字节数，超过时抛出{@link BodyTooLargeException}；{@link #NO_LIMIT}表示不限制
+	 * @return 读取的字节数
+	 */
+	public long consume(ByteConsumer consumer, long maxBytes) throws IOException {
+		byte[] buffer = BufferPool.acquire();
+		try {
+			checkContentLength(getContentLength(), maxBytes);
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			long total = 0;
+			int read;
+			while ((read = body.read(buffer, 0, buffer.length)) != -1) {
+				total += read;
+				if (maxBytes != NO_LIMIT && total > maxBytes) {
+					throw new BodyTooLargeException(maxBytes);
+				}
+				byteBuffer.clear();
+				byteBuffer.limit(read);
+				consumer.accept(byteBuffer);
+			}
+			return total;
+		} finally {
+			close();
+			BufferPool.release(buffer);
+		}
+	}
+
+	/**
+	 * 直接从响应体的字节流解析Json，不需要先转换为String。解析完后关闭响应
+	 *
+	 * @param type 目标对象类型
+	 * @param maxBytes 响应体的最大字节数，超过时抛出{@link BodyTooLargeException}；{@link #NO_LIMIT}表示不限制
+	 * @return 转换之后的对象
+	 */
+	public <T> T readJson(Class<T> type, long maxBytes) throws IOException {
+		try {
+			checkContentLength(getContentLength(), maxBytes);
+			return JsonTool.getInstance().getReader(type).readValue(limit(maxBytes));
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * 直接从响应体的字节流解析Json，不需要先转换为String。解析完后关闭响应
+	 *
+	 * @param type 目标对象类型，用于包含泛型的类型
+	 * @param maxBytes 响应体的最大字节数，超过时抛出{@link BodyTooLargeException}；{@link #NO_LIMIT}表示不限制
+	 * @return 转换之后的对象
+	 */
+	public <T> T readJson(TypeReference<T> type, long maxBytes) throws IOException {
+		try {
+			checkContentLength(getContentLength(), maxBytes);
+			return JsonTool.getInstance().getReader(type).readValue(limit(maxBytes));
+		} finally {
+			close();
+		}
+	}
+
+	private InputStream limit(long maxBytes) {
+		return maxBytes == NO_LIMIT ? body : new LimitedInputStream(body, maxBytes);
+	}
+
+	private static void checkContentLength(long contentLength, long maxBytes) throws BodyTooLargeException {
+		if (maxBytes != NO_LIMIT && contentLength > maxBytes) {
+			throw new BodyTooLargeException(maxBytes);
+		}
+	}
+
+	/**
+	 * 关闭响应。响应体未读完时，剩余部分较少则读完以便复用连接，否则直接关闭连接
+	 */
+	@Override
+	public void close() {
+		body.close();
+	}
+
+	/**
+	 * 分块处理响应体的回调
+	 */
+	public interface ByteConsumer {
+		/**
+		 * @param buffer 一块数据，position到limit之间为有效内容，只在回调期间有效
+		 */
+		void accept(ByteBuffer buffer) throws IOException;
+	}
+
+	/**
+	 * 响应体超过了指定的最大字节数
+	 */
+	public static class BodyTooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public BodyTooLargeException(long maxBytes) {
+			super("response body exceeds " + maxBytes + " bytes");
+		}
+	}
+
+	/**
+	 * 归还连接的回调
+	 */
+	interface Releaser {
+		/**
+		 * @param reusable 连接是否可以继续使用
+		 */
+		void release(boolean reusable);
+	}
+
+	/**
+	 * 超过最大字节数时抛出异常的输入流
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+		private final long maxBytes;
+		private long total;
+
+		LimitedInputStream(InputStream in, long maxBytes) {
+			super(in);
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b != -1 && ++total > maxBytes) {
+				throw new BodyTooLargeException(maxBytes);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			int read = in.read(buffer, offset, count);
+			if (read > 0 && (total += read) > maxBytes) {
+				throw new BodyTooLargeException(maxBytes);
+			}
+			return read;
+		}
+	}
+
+	/**
+	 * 包装响应体，读到结尾时自动归还连接
+	 */
+	private static class BodyStream extends InputStream {
+		private final InputStream framed;
+		private final InputStream content;
+		private Releaser releaser;
+
+		BodyStream(InputStream framed, InputStream content, Releaser releaser) {
+			this.framed = framed;
+			this.content = content;
+			this.releaser = releaser;
+			if (framed == null) {
+				release(true);
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (framed == null || releaser == null) {
+				return -1;
+			}
+			try {
+				int b = content.read();
+				if (b == -1) {
+					// 解压后的内容结束时，原始响应体可能还剩结尾(如chunked的结束块)没有读取
+					drain();
+				}
+				return b;
+			} catch (IOException e) {
+				release(false);
+				throw e;
+			}
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			if (framed == null || releaser == null) {
+				return -1;
+			}
+			try {
+				int read = content.read(buffer, offset, count);
+				if (read == -1) {
+					drain();
+				}
+				return read;
+			} catch (IOException e) {
+				release(false);
+				throw e;
+			}
+		}
+
+		@Override
+		public int available() throws IOException {
+			return framed == null || releaser == null ? 0 : content.available();
+		}
+
+		@Override
+		public void close() {
+			if (releaser == null) {
+				return;
+			}
+			if (framed instanceof HttpConnection.FixedLengthInputStream
+					&& ((HttpConnection.FixedLengthInputStream) framed).remaining() <= MAX_DRAIN_BYTES) {
+				drain();
+			} else if (framed instanceof HttpConnection.ChunkedInputStream) {
+				drain();
+			} else {
+				release(false);
+			}
+		}
+
+		/**
+		 * 读完原始响应体的剩余部分以便复用连接，剩余太多时直接关闭连接
+		 */
+		private void drain() {
+			try {
+				byte[] buffer = new byte[4096];
+				long drained = 0;
+				int read;
+				while ((read = framed.read(buffer)) != -1) {
+					drained += read;
+					if (drained > MAX_DRAIN_BYTES) {
+						release(false);
+						return;
+					}
+				}
+				release(true);
+			} catch (IOException e) {
+				release(false);
+			}
+		}
+
+		private void release(boolean reusable) {
+			Releaser current = releaser;
+			releaser = null;
+			if (current != null) {
+				if (content != framed && content != null) {
+					// 释放解压流占用的本地资源，底层连接不会被关闭
+					try {
+						content.close();
+					} catch (IOException e) {
+						// 关闭失败时无需处理
+					}
+				}
+				current.release(reusable);
+			}
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package com.itant.androidtool.network;
+
+/**
+ * IPv4/IPv6地址的解析工具，逐个字符解析，不使用正则表达式，也不创建任何对象。
+ * 解析结果为数值形式：IPv4为int(以long返回以便表示解析失败)，IPv6为两个long(高64位和低64位)
+ * @author iTant
+ *
+ */
+public final class IpAddressParser {
+
+	/** 解析失败时的返回值 */
+	public static final long INVALID = -1;
+
+	private IpAddressParser() {}
+
+	/**
+	 * 判断一个字符串是否为点分十进制形式的IPv4地址，整个字符串必须正好是一个地址
+	 *
+	 * @param text 待判定的字符串
+	 * @return true:表示是IPv4地址 false:表示不是IPv4地址
+	 */
+	public static boolean isIPv4(CharSequence text) {
+		return text != null && parseIPv4(text, 0, text.length()) != INVALID;
+	}
+
+	/**
+	 * 解析点分十进制形式的IPv4地址，如"192.168.1.1"
+	 *
+	 * @param text 地址字符串
+	 * @return 地址的数值(0 ~ 0xFFFFFFFF)，格式不正确时返回{@link #INVALID}
+	 */
+	public static long parseIPv4(CharSequence text) {
+		return text == null ? INVALID : parseIPv4(text, 0, text.length());
+	}
+
+	/**
+	 * 解析text中[start, end)范围内的IPv4地址
+	 *
+	 * @return 地址的数值(0 ~ 0xFFFFFFFF)，格式不正确时返回{@link #INVALID}
+	 */
+	public static long parseIPv4(CharSequence text, int start, int end) {
+		long address = 0;
+		int parts = 0;
+		int i = start;
+		while (i < end) {
+			int value = 0;
+			int digits = 0;
+			while (i < end && digits < 4) {
+				char c = text.charAt(i);
+				if (c < '0' || c > '9') {
+					break;
+				}
+				value = value * 10 + (c - '0');
+				digits++;
+				i++;
+			}
+			if (digits == 0 || digits > 3 || value > 255) {
+				return INVALID;
+			}
+			address = (address << 8) | value;
+			parts++;
+
+			if (i == end) {
+				break;
+			}
+			if (parts == 4 || text.charAt(i) != '.') {
+				return INVALID;
+			}
+			i++;
+			if (i == end) {
+				// 不能以'.'结尾
+				return INVALID;
+			}
+		}
+		return parts == 4 ? address : INVALID;
+	}
+
+	/**
+	 * 将IPv4地址的数值转换为点分十进制形式
+	 *
+	 * @param address 地址的数值，高位为第一段
+	 * @return 如"192.168.1.1"
+	 */
+	public static String formatIPv4(int address) {
+		return new StringBuilder(15).append(address >>> 24).append('.').append((address >>> 16) & 0xFF).append('.')
+				.append((address >>> 8) & 0xFF).append('.').append(address & 0xFF).toString();
+	}
+
+	/**
+	 * 判断一个字符串是否为IPv6地址，支持"::"缩写、末尾内嵌IPv4地址以及"%"后的作用域
+	 *
+	 * @param text 待判定的字符串
+	 * @return true:表示是IPv6地址 false:表示不是IPv6地址
+	 */
+	public static boolean isIPv6(CharSequence text) {
+		return text != null && parseIPv6(text, 0, text.length(), null);
+	}
+
+	/**
+	 * 解析IPv6地址，如"fe80::1%wlan0"、"::ffff:192.168.1.1"
+	 *
+	 * @param text 地址字符串
+	 * @param out 长度至少为2的数组，解析成功时out[0]为高64位，out[1]为低64位；传null表示只做校验
+	 * @return true:表示解析成功 false:表示格式不正确
+	 */
+	public static boolean parseIPv6(CharSequence text, long[] out) {
+		return text != null && parseIPv6(text, 0, text.length(), out);
+	}
+
+	/**
+	 * 解析text中[start, end)范围内的IPv6地址
+	 *
+	 * @param out 长度至少为2的数组，解析成功时out[0]为高64位，out[1]为低64位；传null表示只做校验
+	 * @return true:表示解析成功 false:表示格式不正确
+	 */
+	public static boolean parseIPv6(CharSequence text, int start, int end, long[] out) {
+		// 去掉作用域，如"%wlan0"
+		for (int i = start; i < end; i++) {
+			if (text.charAt(i) == '%') {
+				if (i == end - 1) {
+					return false;
+				}
+				end = i;
+				break;
+			}
+		}
+		if (end - start < 2) {
+			return false;
+		}
+
+		// "::"之前的分组和之后的分组分别累加为128位的数值
+		long headHigh = 0;
+		long headLow = 0;
+		long tailHigh = 0;
+		long tailLow = 0;
+		int headGroups = 0;
+		int tailGroups = 0;
+		boolean compressed = false;
+
+		int i = start;
+		if (text.charAt(i) == ':') {
+			if (text.charAt(i + 1) != ':') {
+				return false;
+			}
+			compressed = true;
+			i += 2;
+		}
+
+		while (i < end) {
+			int groupStart = i;
+			int value = 0;
+			while (i < end && i - groupStart < 5) {
+				int digit = hexDigit(text.charAt(i));
+				if (digit < 0) {
+					break;
+				}
+				value = (value << 4) | digit;
+				i++;
+			}
+
+			if (i < end && text.charAt(i) == '.') {
+				// 末尾内嵌的IPv4地址，占两个分组
+				if (headGroups + tailGroups > 6) {
+					return false;
+				}
+				long ipv4 = parseIPv4(text, groupStart, end);
+				if (ipv4 == INVALID) {
+					return false;
+				}
+				if (compressed) {
+					tailHigh = (tailHigh << 32) | (tailLow >>> 32);
+					tailLow = (tailLow << 32) | ipv4;
+					tailGroups += 2;
+				} else {
+					headHigh = (headHigh << 32) | (headLow >>> 32);
+					headLow = (headLow << 32) | ipv4;
+					headGroups += 2;
+				}
+				i = end;
+				break;
+			}
+
+			int digits = i - groupStart;
+			if (digits == 0 || digits > 4 || headGroups + tailGroups == 8) {
+				return false;
+			}
+			if (compressed) {
+				tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+				tailLow = (tailLow << 16) | value;
+				tailGroups++;
+			} else {
+				headHigh = (headHigh << 16) | (headLow >>> 48);
+				headLow = (headLow << 16) | value;
+				headGroups++;
+			}
+
+			if (i == end) {
+				break;
+			}
+			if (text.charAt(i) != ':') {
+				return false;
+			}
+			i++;
+			if (i == end) {
+				// 不能以单个':'结尾
+				return false;
+			}
+			if (text.charAt(i) == ':') {
+				if (compressed) {
+					// 只能有一个"::"
+					return false;
+				}
+				compressed = true;
+				i++;
+			}
+		}
+
+		int groups = headGroups + tailGroups;
+		if (compressed ? groups > 7 : groups != 8) {
+			return false;
+		}
+		if (out != null) {
+			// 把"::"之前的部分移到高位，空出的位置补0
+			for (int shift = 8 - headGroups; shift > 0; shift--) {
+				headHigh = (headHigh << 16) | (headLow >>> 48);
+				headLow <<= 16;
+			}
+			out[0] = headHigh | tailHigh;
+			out[1] = headLow | tailLow;
+		}
+		return true;
+	}
+
+	/**
+	 * 只接受ASCII的十六进制数字，Character.digit还会接受全角数字等其他Unicode数字
+	 *
+	 * @return 数值，不是十六进制数字时返回-1
+	 */
+	private static int hexDigit(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		} else if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		} else if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,191 @@
+package com.itant.androidtool.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * multipart/form-data格式的请求体，用于上传文件。文件部分在发送时才从磁盘读取，边读边写，内存占用与文件大小无关。
+ * 所有部分的长度都已知时以Content-Length发送，否则以chunked方式发送
+ * @author iTant
+ *
+ */
+public class MultipartBody extends RequestBody {
+
+	private static final byte[] CRLF = { '\r', '\n' };
+	private static final byte[] DASHES = { '-', '-' };
+
+	private final String boundary;
+	private final List<Part> parts = new ArrayList<Part>();
+
+	public MultipartBody() {
+		this("AndroidToolBoundary" + UUID.randomUUID().toString().replace("-", ""));
+	}
+
+	/**
+	 * @param boundary 各部分之间的分隔符，不能出现在内容中
+	 */
+	public MultipartBody(String boundary) {
+		this.boundary = boundary;
+	}
+
+	/**
+	 * 添加一个普通的表单字段
+	 *
+	 * @param name 字段名
+	 * @param value 字段值
+	 * @return this
+	 */
+	public MultipartBody addFormField(String name, String value) {
+		try {
+			return addPart(name, null, RequestBody.create(null, value.getBytes("UTF-8")));
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * 添加一个文件，Content-Type根据文件名猜测
+	 *
+	 * @param name 字段名
+	 * @param file 文件
+	 * @return this
+	 */
+	public MultipartBody addFilePart(String name, File file) {
+		String contentType = URLConnection.guessContentTypeFromName(file.getName());
+		return addFilePart(name, file, contentType != null ? contentType : "application/octet-stream");
+	}
+
+	/**
+	 * 添加一个文件
+	 *
+	 * @param name 字段名
+	 * @param file 文件
+	 * @param contentType 文件的Content-Type
+	 * @return this
+	 */
+	public MultipartBody addFilePart(String name, File file, String contentType) {
+		return addPart(name, file.getName(), RequestBody.create(contentType, file));
+	}
+
+	/**
+	 * 添加任意内容的一个部分
+	 *
+	 * @param name 字段名
+	 * @param fileName 文件名，不是文件时为null
+	 * @param body 内容，长度未知时整个请求以chunked方式发送
+	 * @return this
+	 */
+	public MultipartBody addPart(String name, String fileName, RequestBody body) {
+		StringBuilder headers = new StringBuilder(128);
+		headers.append("Content-Disposition: form-data; name=");
+		appendQuoted(name, headers);
+		if (fileName != null) {
+			headers.append("; filename=");
+			appendQuoted(fileName, headers);
+		}
+		headers.append("\r\n");
+		if (body.getContentType() != null) {
+			headers.append("Content-Type: ").append(body.getContentType()).append("\r\n");
+		}
+		headers.append("\r\n");
+		try {
+			parts.add(new Part(headers.toString().getBytes("UTF-8"), body));
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+		return this;
+	}
+
+	/**
+	 * 引号、回车和换行按浏览器的做法转义
+	 */
+	private static void appendQuoted(String value, StringBuilder builder) {
+		builder.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				builder.append("%22");
+				break;
+			case '\r':
+				builder.append("%0D");
+				break;
+			case '\n':
+				builder.append("%0A");
+				break;
+			default:
+				builder.append(c);
+				break;
+			}
+		}
+		builder.append('"');
+	}
+
+	public String getBoundary() {
+		return boundary;
+	}
+
+	@Override
+	public String getContentType() {
+		return "multipart/form-data; boundary=" + boundary;
+	}
+
+	@Override
+	public long getContentLength() {
+		long boundaryLength = boundary.length();
+		long length = 0;
+		for (Part part : parts) {
+			long partLength = part.body.getContentLength();
+			if (partLength < 0) {
+				return -1;
+			}
+			// --boundary\r\n headers body\r\n
+			length += DASHES.length + boundaryLength + CRLF.length + part.headers.length + partLength + CRLF.length;
+		}
+		// --boundary--\r\n
+		return length + DASHES.length + boundaryLength + DASHES.length + CRLF.length;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		for (Part part : parts) {
+			if (!part.body.isRepeatable()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		byte[] boundaryBytes = boundary.getBytes("ISO-8859-1");
+		for (Part part : parts) {
+			out.write(DASHES);
+			out.write(boundaryBytes);
+			out.write(CRLF);
+			out.write(part.headers);
+			part.body.writeTo(out);
+			out.write(CRLF);
+		}
+		out.write(DASHES);
+		out.write(boundaryBytes);
+		out.write(DASHES);
+		out.write(CRLF);
+	}
+
+	private static class Part {
+		final byte[] headers;
+		final RequestBody body;
+
+		Part(byte[] headers, RequestBody body) {
+			this.headers = headers;
+			this.body = body;
+		}
+	}
+}
@@ -1,19 +1,29 @@
 package com.itant.androidtool.network;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
+import java.net.URL;
 import java.util.Enumeration;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
 
 import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiManager;
+import android.telephony.TelephonyManager;
 import android.text.format.Formatter;
+import android.util.Log;
 
 /**
  * 网络相关工具方法
@@ -114,7 +124,8 @@ public class NetworkTool {
 				Enumeration<InetAddress> inetAddressEnumeration = networkInterface.getInetAddresses();
 				while (inetAddressEnumeration.hasMoreElements()) {
 					InetAddress inetAddress = inetAddressEnumeration.nextElement();
-					if (!inetAddress.isLoopbackAddress() && isIPv4Address(inetAddress.getHostAddress())) {
+					// 直接按地址类型判断，不需要先转换为字符串再解析
+					if (!inetAddress.isLoopbackAddress() && inetAddress instanceof Inet4Address) {
 						return inetAddress.getHostAddress();
 					}
 				}
@@ -127,19 +138,23 @@ public class NetworkTool {
 	}
 	
 	/**
-	 * 判断一个字符串是否IPv4形式的IP地址
+	 * 判断一个字符串是否IPv4形式的IP地址，整个字符串必须正好是一个地址
 	 * 
 	 * @param unknownAddress 待判定的字符串
 	 * @return true:表示该字符串是IP地址 false:表示该字符串不是IP地址
 	 */
 	public boolean isIPv4Address(String unknownAddress) {
-		String regex = "\\b(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\b";
-		Pattern pattern = Pattern.compile(regex);
-		Matcher matcher = pattern.matcher(unknownAddress);
-		while (matcher.find()) {
-			return true;
-		}
-		return false;
+		return IpAddressParser.isIPv4(unknownAddress);
+	}
+	
+	/**
+	 * 判断一个字符串是否IPv6形式的IP地址
+	 * 
+	 * @param unknownAddress 待判定的字符串
+	 * @return true:表示该字符串是IPv6地址 false:表示该字符串不是IPv6地址
+	 */
+	public boolean isIPv6Address(String unknownAddress) {
+		return IpAddressParser.isIPv6(unknownAddress);
 	}
 	
 	/**
@@ -256,27 +271,16 @@ public class NetworkTool {
 	 */
 	public String getOutIP() {
 		String IP = "";
+		HttpResponse response = null;
 		try {
 			String address = "http://ip.taobao.com/service/getIpInfo2.php?ip=myip";
-	
-			URL url = new URL(address);
-			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-			connection.setUseCaches(false);
-			if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-				InputStream in = connection.getInputStream();
-				// 将流转化为字符串
-				BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-				String tmpString = "";
-				StringBuilder retJSON = new StringBuilder();
-				while ((tmpString = reader.readLine()) != null) {
-					retJSON.append(tmpString + "\n");
-				}
-	
-				JSONObject jsonObject = new JSONObject(retJSON.toString());
-				String code = jsonObject.getString("code");
+			response = HttpClient.getDefault().execute(new HttpRequest("GET", address));
+			if (response.getCode() == HttpURLConnection.HTTP_OK) {
+				// 直接从字节流解析Json，不需要先拼接成字符串
+				JsonNode jsonObject = response.readJson(JsonNode.class, MAX_IP_RESPONSE_BYTES);
+				String code = jsonObject.path("code").asText();
 				if (code.equals("0")) {
-					JSONObject data = jsonObject.getJSONObject("data");
-					IP = data.getString("ip");
+					IP = jsonObject.path("data").path("ip").asText();
 				} else {
 					IP = "";
 					Log.e("提示", "IP接口异常，无法获取IP地址！");
@@ -288,67 +292,139 @@ public class NetworkTool {
 		} catch (Exception e) {
 			IP = "";
 			Log.e("提示", "获取IP地址时出现异常，异常信息是：" + e.toString());
+		} finally {
+			if (response != null) {
+				response.close();
+			}
 		}
 		return IP;
 	}
+	
+	/** 外网IP接口的响应很小，超过该字节数视为异常 */
+	private static final long MAX_IP_RESPONSE_BYTES = 64 * 1024;
+	
 /**
+     * 请求默认的连接和读取超时(毫秒)
+     */
+    public static final int DEFAULT_TIMEOUT = 6 * 1000;
+
+    /** POST请求体是否以gzip压缩后发送 */
+    private static volatile boolean compressRequestBody = false;
+
+    /**
+     * 设置POST请求体是否以gzip压缩后发送(Content-Encoding: gzip)，默认不压缩。
+     * 只有服务器支持解压请求体时才能打开。响应体的压缩不需要设置，会自动声明支持gzip和deflate并透明解压
+     * 
+     * @param compress true:表示压缩请求体
+     */
+    public static void setCompressRequestBody(boolean compress) {
+        compressRequestBody = compress;
+    }
+
+    /** 合并相同的并发GET请求 */
+    private static final SingleFlight<String> GET_FLIGHTS = new SingleFlight<String>();
+
+    /**
+     * 状态码为200时把响应体读为字符串，否则返回null
+     */
+    private static final AsyncHttpClient.ResponseHandler<String> STRING_HANDLER = new AsyncHttpClient.ResponseHandler<String>() {
+        @Override
+        public String handle(HttpResponse response) throws IOException {
+            if (HttpURLConnection.HTTP_OK != response.getCode()) {
+                return null;
+            }
+            // 按原样解码响应体，不再逐行读取后拼接"\n"
+            return response.readString();
+        }
+    };
+
+    /**
+     * 为GET请求启用响应缓存，之后submitGetRequest会优先使用未过期的缓存，过期后向服务器确认内容是否变化
+     * 
+     * @param cache 缓存，如{@link HttpCache#create(Context, long)}；null表示关闭缓存
+     */
+    public static void setHttpCache(HttpCache cache) {
+        HttpClient.getDefault().setCache(cache);
+    }
+
+    /**
      * 发送GET请求
      * @param urlAddress 请求的网址
      * @param requestParams 请求参数
      * @return
      */
-    public static String submitGetRequest(String urlAddress, RequestParams requestParams) {
+    public static String submitGetRequest(final String urlAddress, final RequestParams requestParams) {
         String result = null;
-        HttpURLConnection connection = null;
-        URL url = null;
-
         try {
-            if (requestParams != null) {
-                // 请求参数
-                Map<String, String> params = requestParams.getParams();
-                int paramSize = params.size();
-                int index = 1;
-                StringBuilder paramsBuilder = new StringBuilder();
-                paramsBuilder.append("?");
-                for (String key : params.keySet()) {
-                    paramsBuilder.append(key).append("=").append(URLEncoder.encode(params.get(key), "UTF-8"));
-                    if (index < paramSize) {
-                        paramsBuilder.append("&");
-                        index++;
+            // 相同的请求正在进行时直接等待它的结果，共享同一次网络请求和同一个响应字符串
+            result = GET_FLIGHTS.execute(createRequestKey(urlAddress, requestParams), new SingleFlight.Loader<String>() {
+                @Override
+                public String load() throws IOException {
+                    // 连接由连接池管理，请求结束后归还以便复用，不再每次disconnect
+                    HttpResponse response = HttpClient.getDefault().execute(
+                            createGetRequest(urlAddress, requestParams, DEFAULT_TIMEOUT));
+                    try {
+                        return STRING_HANDLER.handle(response);
+                    } finally {
+                        response.close();
                     }
                 }
-                url = new URL(urlAddress + paramsBuilder.toString());
-            } else {
-                url = new URL(urlAddress);
-            }
-
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("Content-type", "text/html");
-            // 不要用cache，用了也没有什么用，因为我们不会经常对一个链接频繁访问。（针对程序）
-            connection.setUseCaches(false);
-            connection.setConnectTimeout(6 * 1000);
-            connection.setReadTimeout(6 * 1000);
-            connection.setRequestProperty("Charset", "utf-8");
-
-            connection.connect();
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
 
-            if (HttpURLConnection.HTTP_OK == connection.getResponseCode()) {
-                InputStream inputStream  = connection.getInputStream();
+    /**
+     * @return submitGetRequest使用的请求合并器，可以查看实际执行和被合并的请求数
+     */
+    public static SingleFlight<String> getGetRequestFlights() {
+        return GET_FLIGHTS;
+    }
 
-                BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "utf-8"));
-                StringBuilder builder = new StringBuilder();
-                String line = null;
-                while ((line = reader.readLine()) != null) {
-                    builder.append(line).append("\n");
+    /**
+     * 生成GET请求的唯一标识：协议和主机名转为小写，补全端口和路径，参数按名字排序，
+     * 这样只是写法不同的相同请求也能被合并
+     */
+    private static String createRequestKey(String urlAddress, RequestParams requestParams) throws IOException {
+        URL url = new URL(urlAddress);
+        String file = url.getFile();
+        StringBuilder key = new StringBuilder(HttpConnection.getRoute(url)).append(file.length() == 0 ? "/" : file);
+        if (requestParams != null && !requestParams.isEmpty()) {
+            key.append('\u0000');
+            // 同名参数的多个值保持原来的顺序，服务器通常按顺序解析它们
+            for (Map.Entry<String, List<String>> param
+                    : new TreeMap<String, List<String>>(requestParams.getParams()).entrySet()) {
+                for (String value : param.getValue()) {
+                    key.append(param.getKey()).append('=').append(value).append('\u0000');
                 }
-                result = builder.toString();
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * 发送GET请求，并将响应体直接写入输出流，内存占用与响应体大小无关，适合下载大文件
+     * @param urlAddress 请求的网址
+     * @param requestParams 请求参数
+     * @param out 响应体写入的输出流，不会被关闭
+     * @param maxBytes 响应体的最大字节数，超过时中止下载；{@link HttpResponse#NO_LIMIT}表示不限制
+     * @return 写入的字节数，状态码不是200或者出现异常时返回-1
+     */
+    public static long submitGetRequest(String urlAddress, RequestParams requestParams, OutputStream out, long maxBytes) {
+        long result = -1;
+        HttpResponse response = null;
+        try {
+            response = HttpClient.getDefault().execute(createGetRequest(urlAddress, requestParams, DEFAULT_TIMEOUT));
+            if (HttpURLConnection.HTTP_OK == response.getCode()) {
+                result = response.writeTo(out, maxBytes);
             }
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (connection != null) {
-                connection.disconnect();
+            if (response != null) {
+                response.close();
             }
         }
         return result;
@@ -360,68 +436,140 @@ public class NetworkTool {
      */
     public static String submitPostRequest(String urlAddress, RequestParams requestParams) {
         String result = null;
-        HttpURLConnection connection = null;
+        HttpResponse response = null;
         try {
-            URL url = new URL(urlAddress);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-
-            //connection.setRequestProperty("User-Agent", "Mozilla/4.0 (compatible; MSIE 7.0; Windows 7)");
-            connection.setRequestProperty("Accept", "image/gif, image/x-xbitmap, image/jpeg, image/pjpeg, application/x-shockwave-flash, application/vnd.ms-powerpoint, application/vnd.ms-excel, application/msword, */*");
-            connection.setRequestProperty("Accept-Language", "zh-cn");
-            //connection.setRequestProperty("UA-CPU", "x86");
-            //connection.setRequestProperty("Accept-Encoding", "gzip");
-            // 很重要
-            connection.setRequestProperty("Content-Type","application/x-www-form-urlencoded;charset=UTF-8");
-            connection.setRequestProperty("connection", "Keep-Alive");
-            connection.setConnectTimeout(6 * 1000);
-            connection.setReadTimeout(6 * 1000);
-            // 发送POST请求必须设置这两项
-            connection.setDoOutput(true);
-            connection.setDoInput(true);
-            connection.setRequestProperty("Charset", "utf-8");
-
-            connection.connect();
-
-            if (requestParams != null) {
-                // 请求参数
-                Map<String, String> params = requestParams.getParams();
-                int paramSize = params.size();
-                int index = 1;
-                StringBuilder paramsBuilder = new StringBuilder();
-                for (String key : params.keySet()) {
-                    paramsBuilder.append(key).append("=").append(params.get(key));
-                    if (index < paramSize) {
-                        paramsBuilder.append("&");
-                        index++;
-                    }
-                }
-
-                OutputStreamWriter writer = new OutputStreamWriter(connection.getOutputStream());
-                writer.write(paramsBuilder.toString());
-                writer.flush();
-                writer.close();
+            response = HttpClient.getDefault().execute(createPostRequest(urlAddress, requestParams, DEFAULT_TIMEOUT));
+            result = STRING_HANDLER.handle(response);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (response != null) {
+                response.close();
             }
+        }
+        return result;
+    }
 
-            if (HttpURLConnection.HTTP_OK == connection.getResponseCode()) {
-                InputStream inputStream = null;
-                inputStream = connection.getInputStream();
-                BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "utf-8"));
-                StringBuilder builder = new StringBuilder();
-                String line = null;
-                while ((line = reader.readLine()) != null) {
-                    builder.append(line).append("\n");
-                }
-                result = builder.toString();
-            }
+    /**
+     * 以任意请求体发送POST请求，用于上传文件。请求体在发送时边读边写，上传几百MB的文件也不会占用大量内存
+     * @param urlAddress 请求的网址
+     * @param body 请求体，如{@link MultipartBody}或者{@link RequestBody#create(String, java.io.File)}
+     * @param timeout 连接和等待响应的超时(毫秒)，上传较大的文件时服务器可能需要更长的处理时间
+     * @param listener 上传进度和速度的回调，可以为null
+     * @return 响应体，状态码不是200或者出现异常时返回null
+     */
+    public static String submitPostRequest(String urlAddress, RequestBody body, int timeout,
+            RequestBody.ProgressListener listener) {
+        String result = null;
+        HttpResponse response = null;
+        try {
+            response = HttpClient.getDefault().execute(
+                    createPostRequest(urlAddress, listener != null ? RequestBody.progress(body, listener) : body, timeout));
+            result = STRING_HANDLER.handle(response);
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (connection != null) {
-                connection.disconnect();
+            if (response != null) {
+                response.close();
             }
         }
         return result;
     }
 
+    /**
+     * 异步发送GET请求，由{@link AsyncHttpClient#getDefault()}执行，并发数受其总数和单个主机的上限限制
+     * @param urlAddress 请求的网址
+     * @param requestParams 请求参数
+     * @param timeout 连接和读取的超时(毫秒)
+     * @param callback 完成时的回调，在后台线程中调用，状态码不是200时结果为null；可以为null
+     * @return 可以用来等待结果({@link HttpCall#get()})或者取消请求({@link HttpCall#cancel(boolean)})
+     */
+    public static HttpCall<String> submitGetRequestAsync(String urlAddress, RequestParams requestParams, int timeout,
+            AsyncHttpClient.Callback<String> callback) {
+        HttpRequest request;
+        try {
+            request = createGetRequest(urlAddress, requestParams, timeout);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return AsyncHttpClient.getDefault().enqueue(request, STRING_HANDLER, callback);
+    }
+
+    /**
+     * 异步发送POST请求，由{@link AsyncHttpClient#getDefault()}执行，并发数受其总数和单个主机的上限限制
+     * @param urlAddress 请求的网址
+     * @param requestParams 请求参数
+     * @param timeout 连接和读取的超时(毫秒)
+     * @param callback 完成时的回调，在后台线程中调用，状态码不是200时结果为null；可以为null
+     * @return 可以用来等待结果({@link HttpCall#get()})或者取消请求({@link HttpCall#cancel(boolean)})
+     */
+    public static HttpCall<String> submitPostRequestAsync(String urlAddress, RequestParams requestParams, int timeout,
+            AsyncHttpClient.Callback<String> callback) {
+        HttpRequest request;
+        try {
+            request = createPostRequest(urlAddress, requestParams, timeout);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return AsyncHttpClient.getDefault().enqueue(request, STRING_HANDLER, callback);
+    }
+
+    /**
+     * 异步以任意请求体发送POST请求，用于上传文件
+     * @param urlAddress 请求的网址
+     * @param body 请求体，如{@link MultipartBody}或者{@link RequestBody#create(String, java.io.File)}
+     * @param timeout 连接和等待响应的超时(毫秒)
+     * @param listener 上传进度和速度的回调，在后台线程中调用；可以为null
+     * @param callback 完成时的回调，在后台线程中调用，状态码不是200时结果为null；可以为null
+     * @return 可以用来等待结果({@link HttpCall#get()})或者取消请求({@link HttpCall#cancel(boolean)})
+     */
+    public static HttpCall<String> submitPostRequestAsync(String urlAddress, RequestBody body, int timeout,
+            RequestBody.ProgressListener listener, AsyncHttpClient.Callback<String> callback) {
+        HttpRequest request;
+        try {
+            request = createPostRequest(urlAddress, listener != null ? RequestBody.progress(body, listener) : body, timeout);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return AsyncHttpClient.getDefault().enqueue(request, STRING_HANDLER, callback);
+    }
+
+    private static HttpRequest createGetRequest(String urlAddress, RequestParams requestParams, int timeout)
+            throws IOException {
+        URL url;
+        if (requestParams != null && !requestParams.isEmpty()) {
+            // 请求参数直接编码到URL后面
+            StringBuilder urlBuilder = new StringBuilder(urlAddress.length() + 64).append(urlAddress);
+            urlBuilder.append(urlAddress.indexOf('?') < 0 ? '?' : '&');
+            FormEncoder.appendTo(requestParams, urlBuilder);
+            url = new URL(urlBuilder.toString());
+        } else {
+            url = new URL(urlAddress);
+        }
+
+        return new HttpRequest("GET", url)
+                .setHeader("Content-type", "text/html")
+                .setHeader("Charset", "utf-8")
+                .setConnectTimeout(timeout)
+                .setReadTimeout(timeout);
+    }
+
+    private static HttpRequest createPostRequest(String urlAddress, RequestParams requestParams, int timeout)
+            throws IOException {
+        // 很重要，参数在发送时才编码写入连接
+        RequestBody body = RequestBody.form(requestParams != null ? requestParams : new RequestParams());
+        return createPostRequest(urlAddress, compressRequestBody ? RequestBody.gzip(body) : body, timeout);
+    }
+
+    private static HttpRequest createPostRequest(String urlAddress, RequestBody body, int timeout)
+            throws IOException {
+        return new HttpRequest("POST", urlAddress)
+                .setHeader("Accept", "image/gif, image/x-xbitmap, image/jpeg, image/pjpeg, application/x-shockwave-flash, application/vnd.ms-powerpoint, application/vnd.ms-excel, application/msword, */*")
+                .setHeader("Accept-Language", "zh-cn")
+                .setHeader("Charset", "utf-8")
+                .setConnectTimeout(timeout)
+                .setReadTimeout(timeout)
+                .setBody(body);
+    }
+
 }
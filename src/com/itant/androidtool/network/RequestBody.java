@@ -0,0 +1,342 @@
+package com.itant.androidtool.network;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP请求体
+ * @author iTant
+ *
+ */
+public abstract class RequestBody {
+	
+	/**
+	 * 请求体的写出进度，在发送请求的线程中调用，不要在里面做耗时操作
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param bytesWritten 已写出的字节数
+		 * @param contentLength 请求体的总字节数，未知时为-1
+		 * @param bytesPerSecond 从开始写出到现在的平均速度(字节/秒)
+		 */
+		void onProgress(long bytesWritten, long contentLength, long bytesPerSecond);
+	}
+	
+	/**
+	 * @return Content-Type，没有时返回null
+	 */
+	public abstract String getContentType();
+	
+	/**
+	 * @return 请求体的字节数，未知时返回-1(此时以chunked方式发送)
+	 */
+	public abstract long getContentLength();
+	
+	/**
+	 * @return Content-Encoding，如"gzip"，没有压缩时返回null
+	 */
+	public String getContentEncoding() {
+		return null;
+	}
+	
+	/**
+	 * 将请求体写入输出流
+	 * 
+	 * @param out 连接的输出流，不要关闭
+	 */
+	public abstract void writeTo(OutputStream out) throws IOException;
+	
+	/**
+	 * 复用的空闲连接已被服务器关闭时，请求会在新连接上重发一次，此时请求体需要能够再次写出
+	 * 
+	 * @return true:表示writeTo可以被多次调用
+	 */
+	public boolean isRepeatable() {
+		return true;
+	}
+	
+	/**
+	 * 创建一个内容为字节数组的请求体
+	 * 
+	 * @param contentType Content-Type
+	 * @param content 内容
+	 * @return 请求体
+	 */
+	public static RequestBody create(final String contentType, final byte[] content) {
+		return new RequestBody() {
+			@Override
+			public String getContentType() {
+				return contentType;
+			}
+			
+			@Override
+			public long getContentLength() {
+				return content.length;
+			}
+			
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				out.write(content);
+			}
+		};
+	}
+	
+	/**
+	 * 创建一个内容为文件的请求体，发送时边读边写，不会把文件加载到内存中。
+	 * 长度在发送时取文件的大小，发送过程中文件被修改时请求会失败
+	 * 
+	 * @param contentType Content-Type
+	 * @param file 文件
+	 * @return 请求体
+	 */
+	public static RequestBody create(final String contentType, final File file) {
+		return new RequestBody() {
+			@Override
+			public String getContentType() {
+				return contentType;
+			}
+			
+			@Override
+			public long getContentLength() {
+				return file.length();
+			}
+			
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				FileInputStream in = new FileInputStream(file);
+				byte[] buffer = BufferPool.acquire();
+				try {
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						out.write(buffer, 0, read);
+					}
+				} finally {
+					BufferPool.release(buffer);
+					in.close();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * 创建一个application/x-www-form-urlencoded格式的请求体，写出时直接把参数编码到输出流，不在内存中拼接。
+	 * 长度在创建时计算，之后不要再修改参数
+	 * 
+	 * @param params 请求参数
+	 * @return 请求体
+	 */
+	public static RequestBody form(final RequestParams params) {
+		final long contentLength = FormEncoder.encodedLength(params);
+		return new RequestBody() {
+			@Override
+			public String getContentType() {
+				return FormEncoder.CONTENT_TYPE;
+			}
+			
+			@Override
+			public long getContentLength() {
+				return contentLength;
+			}
+			
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				FormEncoder.writeTo(params, out);
+			}
+		};
+	}
+	
+	/**
+	 * 以gzip压缩请求体，边写边压缩，不会把压缩结果缓存在内存中。服务器需要支持Content-Encoding: gzip
+	 * 
+	 * @param body 原始请求体
+	 * @return 压缩后的请求体，长度未知，以chunked方式发送
+	 */
+	public static RequestBody gzip(RequestBody body) {
+		return new CompressedBody(body, "gzip");
+	}
+	
+	/**
+	 * 以deflate(zlib格式)压缩请求体，边写边压缩。服务器需要支持Content-Encoding: deflate
+	 * 
+	 * @param body 原始请求体
+	 * @return 压缩后的请求体，长度未知，以chunked方式发送
+	 */
+	public static RequestBody deflate(RequestBody body) {
+		return new CompressedBody(body, "deflate");
+	}
+	
+	/**
+	 * 在写出请求体时报告进度。两次回调至少间隔{@link ProgressBody#INTERVAL_MILLIS}毫秒，写完时一定会回调一次。
+	 * 连接失效重发请求时进度从0开始重新计算
+	 * 
+	 * @param body 原始请求体
+	 * @param listener 进度回调
+	 * @return 请求体
+	 */
+	public static RequestBody progress(RequestBody body, ProgressListener listener) {
+		return new ProgressBody(body, listener);
+	}
+	
+	/**
+	 * 报告写出进度的请求体
+	 */
+	static class ProgressBody extends RequestBody {
+		/** 两次进度回调的最小间隔 */
+		static final long INTERVAL_MILLIS = 100;
+		
+		private final RequestBody body;
+		private final ProgressListener listener;
+		
+		ProgressBody(RequestBody body, ProgressListener listener) {
+			this.body = body;
+			this.listener = listener;
+		}
+		
+		@Override
+		public String getContentType() {
+			return body.getContentType();
+		}
+		
+		@Override
+		public long getContentLength() {
+			return body.getContentLength();
+		}
+		
+		@Override
+		public String getContentEncoding() {
+			return body.getContentEncoding();
+		}
+		
+		@Override
+		public boolean isRepeatable() {
+			return body.isRepeatable();
+		}
+		
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			final long contentLength = body.getContentLength();
+			final long start = System.nanoTime();
+			OutputStream progressOut = new FilterOutputStream(out) {
+				private long written;
+				private long lastReport = start;
+				
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					written++;
+					report(false);
+				}
+				
+				@Override
+				public void write(byte[] data, int offset, int length) throws IOException {
+					out.write(data, offset, length);
+					written += length;
+					report(false);
+				}
+				
+				@Override
+				public void close() throws IOException {
+					flush();
+					report(true);
+				}
+				
+				private void report(boolean finished) {
+					long now = System.nanoTime();
+					if (!finished && now - lastReport < INTERVAL_MILLIS * 1000000L) {
+						return;
+					}
+					lastReport = now;
+					long elapsed = now - start;
+					long bytesPerSecond = elapsed <= 0 ? 0 : (long) (written * 1000000000.0 / elapsed);
+					listener.onProgress(written, contentLength, bytesPerSecond);
+				}
+			};
+			body.writeTo(progressOut);
+			progressOut.close();
+		}
+	}
+	
+	/**
+	 * 压缩后的请求体
+	 */
+	static class CompressedBody extends RequestBody {
+		private final RequestBody body;
+		private final String encoding;
+		
+		CompressedBody(RequestBody body, String encoding) {
+			this.body = body;
+			this.encoding = encoding;
+		}
+		
+		@Override
+		public String getContentType() {
+			return body.getContentType();
+		}
+		
+		@Override
+		public long getContentLength() {
+			return -1;
+		}
+		
+		@Override
+		public String getContentEncoding() {
+			return encoding;
+		}
+		
+		@Override
+		public boolean isRepeatable() {
+			return body.isRepeatable();
+		}
+		
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			writeTo(out, null);
+		}
+		
+		/**
+		 * @param rawCounter 统计压缩前的字节数，可以为null
+		 */
+		void writeTo(OutputStream out, AtomicLong rawCounter) throws IOException {
+			// 关闭压缩流是为了写出结尾并释放本地资源，连接本身不能关闭
+			OutputStream target = new FilterOutputStream(out) {
+				@Override
+				public void write(byte[] data, int offset, int length) throws IOException {
+					out.write(data, offset, length);
+				}
+				
+				@Override
+				public void close() throws IOException {
+					flush();
+				}
+			};
+			OutputStream compressed;
+			if ("gzip".equals(encoding)) {
+				compressed = new GZIPOutputStream(target, 8 * 1024);
+			} else {
+				compressed = new DeflaterOutputStream(target, new Deflater(), 8 * 1024) {
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							def.end();
+						}
+					}
+				};
+			}
+			try {
+				body.writeTo(rawCounter == null ? compressed
+						: new HttpConnection.CountingOutputStream(compressed, rawCounter));
+			} finally {
+				compressed.close();
+			}
+		}
+	}
+}
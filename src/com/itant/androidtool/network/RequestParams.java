@@ -0,0 +1,77 @@
+package com.itant.androidtool.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 网络请求的参数，按添加顺序保存，同一个参数名可以有多个值
+ * @author iTant
+ *
+ */
+public class RequestParams {
+
+	private final Map<String, List<String>> params = new LinkedHashMap<String, List<String>>();
+
+	public RequestParams() {}
+
+	/**
+	 * 设置一个参数，已有同名参数时替换它的所有值
+	 *
+	 * @param key 参数名
+	 * @param value 参数值
+	 */
+	public void put(String key, String value) {
+		List<String> values = new ArrayList<String>(1);
+		values.add(value);
+		params.put(key, values);
+	}
+
+	/**
+	 * 添加一个参数值，已有同名参数时保留原来的值，如"id=1&id=2"
+	 *
+	 * @param key 参数名
+	 * @param value 参数值
+	 */
+	public void add(String key, String value) {
+		List<String> values = params.get(key);
+		if (values == null) {
+			values = new ArrayList<String>(1);
+			params.put(key, values);
+		}
+		values.add(value);
+	}
+
+	/**
+	 * @return 参数的第一个值，没有时返回null
+	 */
+	public String get(String key) {
+		List<String> values = params.get(key);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	/**
+	 * 删除一个参数的所有值
+	 *
+	 * @param key 参数名
+	 */
+	public void remove(String key) {
+		params.remove(key);
+	}
+
+	/**
+	 * @return 是否没有任何参数
+	 */
+	public boolean isEmpty() {
+		return params.isEmpty();
+	}
+
+	/**
+	 * @return 所有参数，key为参数名，value为该参数的所有值
+	 */
+	public Map<String, List<String>> getParams() {
+		return Collections.unmodifiableMap(params);
+	}
+}
@@ -0,0 +1,113 @@
+package com.itant.androidtool.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并相同的并发请求：同一个key的请求正在执行时，后来的调用不再重复执行，而是等待并共享第一个调用的结果(或异常)。
+ * 请求结束后立即移除，之后的调用会重新执行，因此不会返回过期的结果
+ * @author iTant
+ *
+ * @param <V> 结果类型，会被多个线程共享，应该是不可变的
+ */
+public class SingleFlight<V> {
+
+	/**
+	 * 执行实际的请求
+	 */
+	public interface Loader<V> {
+		V load() throws IOException;
+	}
+
+	private final ConcurrentHashMap<String, Flight<V>> flights = new ConcurrentHashMap<String, Flight<V>>();
+
+	private final AtomicLong executedCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	/**
+	 * 执行请求，同一个key已有请求在执行时等待它的结果
+	 *
+	 * @param key 请求的唯一标识，如规范化之后的URL加参数
+	 * @param loader 执行实际的请求
+	 * @return 请求结果，可能与其他调用者共享
+	 * @throws IOException 请求失败，所有等待的调用者都会收到同一个异常
+	 */
+	public V execute(String key, Loader<V> loader) throws IOException {
+		Flight<V> flight = new Flight<V>();
+		Flight<V> existing = flights.putIfAbsent(key, flight);
+		if (existing != null) {
+			coalescedCount.incrementAndGet();
+			return existing.await();
+		}
+
+		executedCount.incrementAndGet();
+		V value = null;
+		IOException error = null;
+		try {
+			value = loader.load();
+			return value;
+		} catch (IOException e) {
+			error = e;
+			throw e;
+		} catch (RuntimeException e) {
+			error = new IOException(e);
+			throw e;
+		} catch (Error e) {
+			error = new IOException(e);
+			throw e;
+		} finally {
+			// 先移除再通知，之后到达的调用会发起新的请求
+			flights.remove(key, flight);
+			flight.complete(value, error);
+		}
+	}
+
+	/**
+	 * @return 实际执行的请求数
+	 */
+	public long getExecutedCount() {
+		return executedCount.get();
+	}
+
+	/**
+	 * @return 被合并、共享了其他调用结果的请求数
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * @return 正在执行的请求数
+	 */
+	public int getInFlightCount() {
+		return flights.size();
+	}
+
+	private static class Flight<V> {
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile V value;
+		private volatile IOException error;
+
+		void complete(V value, IOException error) {
+			this.value = value;
+			this.error = error;
+			latch.countDown();
+		}
+
+		V await() throws IOException {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted waiting for coalesced request");
+			}
+			if (error != null) {
+				throw error;
+			}
+			return value;
+		}
+	}
+}
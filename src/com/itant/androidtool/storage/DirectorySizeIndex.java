@@ -0,0 +1,551 @@
+package com.itant.androidtool.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.util.Log;
+
+/**
+ * 文件夹大小的索引：记录每个子文件夹自身文件的大小和最后修改时间并保存到文件，
+ * 之后只重新统计有变化的子文件夹，不需要每次都遍历整个文件夹。
+ * <p>
+ * 文件夹的最后修改时间只在其中的文件被新建、删除或重命名时改变，直接修改已有文件的内容不会被发现，
+ * 这类修改需要通过{@link #notifyChanged(File)}通知(经过{@link FileTool}的写入和删除会自动通知)，
+ * 或者用{@link #rebuild()}重新统计
+ * @author iTant
+ *
+ */
+public class DirectorySizeIndex {
+
+	private static final String TAG = "DirectorySizeIndex";
+
+	private static final int MAGIC = 0x44534931;
+
+	/** 默认的自动刷新间隔 */
+	public static final long DEFAULT_REFRESH_INTERVAL = 60 * 1000;
+
+	/**
+	 * 部分文件系统(如FAT格式的SD卡)的修改时间精度只有2秒，统计之后同一时间段内的修改可能不会改变修改时间，
+	 * 这样的文件夹下次刷新时重新统计
+	 */
+	private static final long MTIME_GRANULARITY = 2000;
+
+	private final File root;
+	private final File indexFile;
+	private final Map<String, Dir> dirs = new HashMap<String, Dir>();
+	private final Set<String> dirtyDirs = new HashSet<String>();
+	private boolean loaded;
+	private boolean modified;
+	private long lastRefresh;
+	private long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+	private boolean consistencyCheck;
+
+	/**
+	 * @param root 统计的根文件夹
+	 * @param indexFile 保存索引的文件，不要放在根文件夹里面
+	 */
+	public DirectorySizeIndex(File root, File indexFile) {
+		this.root = root.getAbsoluteFile();
+		this.indexFile = indexFile;
+	}
+
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * @param refreshInterval 距离上次按修改时间刷新超过该时间(毫秒)时，{@link #getSize()}先刷新一次；
+	 *                        0表示每次都刷新，-1表示从不自动刷新
+	 */
+	public synchronized void setRefreshInterval(long refreshInterval) {
+		this.refreshInterval = refreshInterval;
+	}
+
+	/**
+	 * @param consistencyCheck true:每次{@link #getSize()}都与完整遍历的结果比较，不一致时打印日志并修正索引。
+	 *                         很慢，只用于调试
+	 */
+	public synchronized void setConsistencyCheck(boolean consistencyCheck) {
+		this.consistencyCheck = consistencyCheck;
+	}
+
+	/**
+	 * 返回根文件夹的大小。只重新统计被通知有变化的文件夹，超过刷新间隔时再按修改时间刷新，
+	 * 没有变化时直接返回记录的结果
+	 *
+	 * @return 根文件夹下所有文件的字节数
+	 */
+	public synchronized long getSize() {
+		return getSize(root);
+	}
+
+	/**
+	 * @param dir 根文件夹或者它的子文件夹
+	 * @return 该文件夹下所有文件的字节数，不在索引中时返回0
+	 */
+	public synchronized long getSize(File dir) {
+		ensureLoaded();
+		if (refreshInterval >= 0 && System.currentTimeMillis() - lastRefresh >= refreshInterval) {
+			refreshChanged();
+		}
+		applyDirty();
+		if (consistencyCheck) {
+			Report report = check();
+			if (!report.isConsistent()) {
+				for (String mismatch : report.getMismatches()) {
+					Log.w(TAG, "inconsistent: " + mismatch);
+				}
+				// check()刚刚完整遍历过，直接用它的结果修正
+				replaceWith(report.actual);
+			}
+		}
+		saveIfModified();
+		Dir entry = dirs.get(dir.getAbsolutePath());
+		return entry == null ? 0 : entry.total;
+	}
+
+	/**
+	 * 检查每个文件夹的修改时间，重新统计有变化的文件夹
+	 *
+	 * @return 根文件夹的大小
+	 */
+	public synchronized long refresh() {
+		ensureLoaded();
+		refreshChanged();
+		applyDirty();
+		saveIfModified();
+		return dirs.get(root.getPath()).total;
+	}
+
+	/**
+	 * 丢弃索引，完整遍历一次
+	 *
+	 * @return 根文件夹的大小
+	 */
+	public synchronized long rebuild() {
+		loaded = true;
+		replaceWith(scanAll());
+		dirtyDirs.clear();
+		lastRefresh = System.currentTimeMillis();
+		saveIfModified();
+		return dirs.get(root.getPath()).total;
+	}
+
+	/**
+	 * 通知某个文件或者文件夹发生了变化(新建、写入或者删除)，下次查询时重新统计它所在的文件夹。
+	 * 是文件夹时它下面的所有子文件夹也会重新统计
+	 *
+	 * @param file 发生变化的文件或文件夹，不在根文件夹下时忽略
+	 */
+	public synchronized void notifyChanged(File file) {
+		String path = file.getAbsolutePath();
+		String rootPath = root.getPath();
+		if (!path.equals(rootPath) && !path.startsWith(rootPath + File.separator)) {
+			return;
+		}
+		ensureLoaded();
+		Dir dir = dirs.get(path);
+		if (dir != null) {
+			markSubtreeDirty(dir);
+		}
+		// 找到最近的已记录的上级文件夹
+		File parent = file.getAbsoluteFile().getParentFile();
+		while (parent != null) {
+			Dir parentDir = dirs.get(parent.getPath());
+			if (parentDir != null) {
+				dirtyDirs.add(parentDir.path);
+				break;
+			}
+			if (parent.getPath().equals(rootPath)) {
+				break;
+			}
+			parent = parent.getParentFile();
+		}
+	}
+
+	/**
+	 * 先重新统计已通知变化的文件夹，再与完整遍历的结果比较，不会按完整遍历的结果修正索引
+	 *
+	 * @return 比较结果
+	 */
+	public synchronized Report check() {
+		ensureLoaded();
+		// 已通知的变化不算不一致
+		applyDirty();
+		Map<String, Dir> actual = scanAll();
+		List<String> mismatches = new ArrayList<String>();
+		for (Dir dir : actual.values()) {
+			Dir indexed = dirs.get(dir.path);
+			if (indexed == null) {
+				mismatches.add(dir.path + ": missing from index, actual " + dir.total);
+			} else if (indexed.ownSize != dir.ownSize || indexed.total != dir.total) {
+				mismatches.add(dir.path + ": indexed " + indexed.total + ", actual " + dir.total);
+			}
+		}
+		for (Dir indexed : dirs.values()) {
+			if (!actual.containsKey(indexed.path)) {
+				mismatches.add(indexed.path + ": no longer exists, indexed " + indexed.total);
+			}
+		}
+		Collections.sort(mismatches);
+		return new Report(dirs.get(root.getPath()).total, actual.get(root.getPath()).total, mismatches, actual);
+	}
+
+	/**
+	 * 重新统计已通知变化的文件夹后保存索引，有变化时{@link #getSize()}等方法会自动保存
+	 */
+	public synchronized void save() {
+		ensureLoaded();
+		applyDirty();
+		modified = true;
+		saveIfModified();
+	}
+
+	private void ensureLoaded() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		if (!load()) {
+			replaceWith(scanAll());
+			lastRefresh = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * 检查每个文件夹的修改时间，变化的标记为需要重新统计
+	 */
+	private void refreshChanged() {
+		for (Dir dir : dirs.values()) {
+			if (new File(dir.path).lastModified() != dir.mtime) {
+				dirtyDirs.add(dir.path);
+			}
+		}
+		lastRefresh = System.currentTimeMillis();
+	}
+
+	/**
+	 * 重新统计所有标记的文件夹，上级文件夹先处理，被删除的子文件夹直接跳过
+	 */
+	private void applyDirty() {
+		if (dirtyDirs.isEmpty()) {
+			return;
+		}
+		List<String> paths = new ArrayList<String>(dirtyDirs);
+		dirtyDirs.clear();
+		Collections.sort(paths, new Comparator<String>() {
+			@Override
+			public int compare(String lhs, String rhs) {
+				return lhs.length() - rhs.length();
+			}
+		});
+		for (String path : paths) {
+			Dir dir = dirs.get(path);
+			if (dir != null) {
+				rescan(dir);
+			}
+		}
+	}
+
+	private void rescan(Dir dir) {
+		File file = new File(dir.path);
+		long scanTime = System.currentTimeMillis();
+		// 先取修改时间再列出，列出过程中的修改会在下次刷新时发现
+		long mtime = file.lastModified();
+		File[] files = file.listFiles();
+		if (files == null && dir.parent != null) {
+			removeSubtree(dir, dirs);
+			List<Dir> siblings = dir.parent.children;
+			siblings.remove(dir);
+			addToAncestors(dir.parent, -dir.total);
+			modified = true;
+			return;
+		}
+
+		Map<String, Dir> oldChildren = new HashMap<String, Dir>();
+		for (Dir child : dir.children) {
+			oldChildren.put(child.path, child);
+		}
+		List<Dir> children = new ArrayList<Dir>();
+		long ownSize = 0;
+		long total = 0;
+		if (files != null) {
+			for (File child : files) {
+				if (child.isDirectory()) {
+					Dir childDir = oldChildren.remove(child.getPath());
+					if (childDir == null) {
+						childDir = scan(child, dir, dirs);
+					}
+					children.add(childDir);
+					total += childDir.total;
+				} else {
+					ownSize += child.length();
+				}
+			}
+		}
+		for (Dir removed : oldChildren.values()) {
+			removeSubtree(removed, dirs);
+		}
+		dir.children = children;
+		dir.ownSize = ownSize;
+		dir.mtime = scanTime - mtime < MTIME_GRANULARITY ? 0 : mtime;
+		total += ownSize;
+		long delta = total - dir.total;
+		dir.total = total;
+		if (dir.parent != null) {
+			addToAncestors(dir.parent, delta);
+		}
+		modified = true;
+	}
+
+	/**
+	 * 完整统计一个文件夹及其子文件夹，结果放入map
+	 */
+	private static Dir scan(File file, Dir parent, Map<String, Dir> map) {
+		Dir dir = new Dir(file.getPath(), parent);
+		map.put(dir.path, dir);
+		long scanTime = System.currentTimeMillis();
+		long mtime = file.lastModified();
+		File[] files = file.listFiles();
+		long total = 0;
+		if (files != null) {
+			for (File child : files) {
+				if (child.isDirectory()) {
+					Dir childDir = scan(child, dir, map);
+					dir.children.add(childDir);
+					total += childDir.total;
+				} else {
+					dir.ownSize += child.length();
+				}
+			}
+		}
+		dir.mtime = scanTime - mtime < MTIME_GRANULARITY ? 0 : mtime;
+		dir.total = total + dir.ownSize;
+		return dir;
+	}
+
+	private Map<String, Dir> scanAll() {
+		Map<String, Dir> map = new HashMap<String, Dir>();
+		scan(root, null, map);
+		return map;
+	}
+
+	private void replaceWith(Map<String, Dir> map) {
+		dirs.clear();
+		dirs.putAll(map);
+		modified = true;
+	}
+
+	private static void removeSubtree(Dir dir, Map<String, Dir> map) {
+		map.remove(dir.path);
+		for (Dir child : dir.children) {
+			removeSubtree(child, map);
+		}
+	}
+
+	private void markSubtreeDirty(Dir dir) {
+		dirtyDirs.add(dir.path);
+		for (Dir child : dir.children) {
+			markSubtreeDirty(child);
+		}
+	}
+
+	private static void addToAncestors(Dir dir, long delta) {
+		for (; dir != null; dir = dir.parent) {
+			dir.total += delta;
+		}
+	}
+
+	/**
+	 * 从文件读取索引，上级文件夹总是在子文件夹之前保存
+	 *
+	 * @return 是否读取成功
+	 */
+	private boolean load() {
+		if (!indexFile.exists()) {
+			return false;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != MAGIC || !root.getPath().equals(in.readUTF())) {
+				return false;
+			}
+			lastRefresh = in.readLong();
+			int count = in.readInt();
+			List<Dir> list = new ArrayList<Dir>(count);
+			Map<String, Dir> map = new HashMap<String, Dir>();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				int parentIndex = in.readInt();
+				if (parentIndex >= i || (parentIndex < 0) != (i == 0)) {
+					return false;
+				}
+				Dir dir = new Dir(path, parentIndex < 0 ? null : list.get(parentIndex));
+				dir.mtime = in.readLong();
+				dir.ownSize = in.readLong();
+				dir.total = dir.ownSize;
+				if (dir.parent != null) {
+					dir.parent.children.add(dir);
+				}
+				list.add(dir);
+				map.put(path, dir);
+			}
+			if (list.isEmpty()) {
+				return false;
+			}
+			// 倒序累加，子文件夹的总大小先算完
+			for (int i = list.size() - 1; i > 0; i--) {
+				Dir dir = list.get(i);
+				dir.parent.total += dir.total;
+			}
+			dirs.clear();
+			dirs.putAll(map);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// 关闭失败时无需处理
+				}
+			}
+		}
+	}
+
+	/**
+	 * 先写临时文件再重命名，写到一半时退出也不会损坏已有的索引
+	 */
+	private void saveIfModified() {
+		if (!modified) {
+			return;
+		}
+		modified = false;
+		File temp = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			out.writeInt(MAGIC);
+			out.writeUTF(root.getPath());
+			out.writeLong(lastRefresh);
+			out.writeInt(dirs.size());
+			Map<Dir, Integer> indexes = new HashMap<Dir, Integer>();
+			write(dirs.get(root.getPath()), out, indexes);
+			out.close();
+			out = null;
+			if (!temp.renameTo(indexFile)) {
+				indexFile.delete();
+				if (!temp.renameTo(indexFile)) {
+					throw new IOException("rename " + temp + " failed");
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			temp.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// 关闭失败时无需处理
+				}
+			}
+		}
+	}
+
+	private static void write(Dir dir, DataOutputStream out, Map<Dir, Integer> indexes) throws IOException {
+		Integer parentIndex = dir.parent == null ? null : indexes.get(dir.parent);
+		indexes.put(dir, indexes.size());
+		out.writeUTF(dir.path);
+		out.writeInt(parentIndex == null ? -1 : parentIndex);
+		out.writeLong(dir.mtime);
+		out.writeLong(dir.ownSize);
+		for (Dir child : dir.children) {
+			write(child, out, indexes);
+		}
+	}
+
+	/**
+	 * 一个文件夹的统计结果
+	 */
+	private static class Dir {
+		final String path;
+		final Dir parent;
+		List<Dir> children = new ArrayList<Dir>();
+		/** 统计时文件夹的修改时间，0表示下次刷新时需要重新统计 */
+		long mtime;
+		/** 文件夹下文件(不含子文件夹)的字节数 */
+		long ownSize;
+		/** 包括所有子文件夹的字节数 */
+		long total;
+
+		Dir(String path, Dir parent) {
+			this.path = path;
+			this.parent = parent;
+		}
+	}
+
+	/**
+	 * 索引与完整遍历的比较结果
+	 */
+	public static class Report {
+		private final long indexedSize;
+		private final long actualSize;
+		private final List<String> mismatches;
+		final Map<String, Dir> actual;
+
+		Report(long indexedSize, long actualSize, List<String> mismatches, Map<String, Dir> actual) {
+			this.indexedSize = indexedSize;
+			this.actualSize = actualSize;
+			this.mismatches = Collections.unmodifiableList(mismatches);
+			this.actual = actual;
+		}
+
+		public boolean isConsistent() {
+			return mismatches.isEmpty();
+		}
+
+		/**
+		 * @return 索引记录的根文件夹大小
+		 */
+		public long getIndexedSize() {
+			return indexedSize;
+		}
+
+		/**
+		 * @return 完整遍历得到的根文件夹大小
+		 */
+		public long getActualSize() {
+			return actualSize;
+		}
+
+		/**
+		 * @return 不一致的文件夹，如"/sdcard/cache/a: indexed 100, actual 200"
+		 */
+		public List<String> getMismatches() {
+			return mismatches;
+		}
+
+		@Override
+		public String toString() {
+			return "Report[indexed=" + indexedSize + ", actual=" + actualSize + ", mismatches=" + mismatches.size() + "]";
+		}
+	}
+}
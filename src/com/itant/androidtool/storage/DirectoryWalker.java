@@ -0,0 +1,233 @@
+package com.itant.androidtool.storage;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行遍历文件夹树：多个线程同时列出不同的子文件夹，每个条目只调用一次isDirectory()。
+ * 调用walk的线程自己也参与遍历，因此在回调中再次调用walk不会死锁，线程池满时也能完成
+ * @author iTant
+ *
+ */
+public class DirectoryWalker {
+
+	/**
+	 * 遍历的回调，会在多个线程中并发调用，实现需要线程安全
+	 */
+	public interface Visitor {
+		/**
+		 * 遇到一个文件(不是文件夹)
+		 */
+		void visitFile(File file);
+
+		/**
+		 * 文件夹及其所有子文件夹都遍历完后调用，根文件夹最后调用
+		 */
+		void postVisitDirectory(File dir);
+	}
+
+	/** 默认的并行线程数(包括调用者)，文件遍历主要受I/O限制，线程太多没有好处 */
+	public static final int DEFAULT_PARALLELISM = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	private final Executor executor;
+	private final int parallelism;
+
+	/**
+	 * @param executor 执行辅助遍历的线程池，拒绝执行时由调用者自己完成
+	 * @param parallelism 每次遍历最多同时使用的线程数(包括调用者)，1表示只在调用者线程中遍历
+	 */
+	public DirectoryWalker(Executor executor, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism < 1: " + parallelism);
+		}
+		this.executor = executor;
+		this.parallelism = parallelism;
+	}
+
+	private static class WalkerProvider {
+		private static DirectoryWalker instance;
+
+		static {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(0, DEFAULT_PARALLELISM * 2, 30, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "DirectoryWalker-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			instance = new DirectoryWalker(executor, DEFAULT_PARALLELISM);
+		}
+	}
+
+	/**
+	 * @return 默认的遍历器，并行数为{@link #DEFAULT_PARALLELISM}
+	 */
+	public static DirectoryWalker getDefault() {
+		return WalkerProvider.instance;
+	}
+
+	/**
+	 * 遍历文件夹下的所有文件，遍历完成后才返回。root不是文件夹或者无法读取时只回调root的postVisitDirectory
+	 *
+	 * @param root 根文件夹
+	 * @param visitor 回调，抛出的异常会停止遍历并由本方法重新抛出
+	 */
+	public void walk(File root, Visitor visitor) {
+		new Walk(visitor).run(root);
+	}
+
+	/**
+	 * 一次遍历。每个文件夹的pending计数为1(自身的列出)加上未完成的子文件夹数，降到0时该文件夹完成
+	 */
+	private class Walk implements Runnable {
+		private final Visitor visitor;
+		private final LinkedBlockingQueue<Node> queue = new LinkedBlockingQueue<Node>();
+		private final AtomicInteger helpers = new AtomicInteger();
+		private volatile boolean finished;
+		private volatile boolean stopped;
+		private volatile Throwable error;
+
+		Walk(Visitor visitor) {
+			this.visitor = visitor;
+		}
+
+		void run(File root) {
+			queue.offer(new Node(root, null));
+			boolean interrupted = false;
+			while (!finished) {
+				Node node;
+				try {
+					node = queue.poll(100, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					// 停止遍历，但要等辅助线程退出，返回后不会再有回调
+					interrupted = true;
+					stopped = true;
+					continue;
+				}
+				if (node != null && node != Node.FINISHED) {
+					process(node);
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			Throwable t = error;
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			}
+		}
+
+		/**
+		 * 辅助线程：队列为空时退出，有新的子文件夹时再启动
+		 */
+		@Override
+		public void run() {
+			try {
+				Node node;
+				while (!finished && (node = queue.poll()) != null) {
+					if (node == Node.FINISHED) {
+						// 留给调用者
+						queue.offer(node);
+						break;
+					}
+					process(node);
+				}
+			} finally {
+				helpers.decrementAndGet();
+			}
+		}
+
+		private void process(Node node) {
+			try {
+				if (!stopped) {
+					File[] files = node.dir.listFiles();
+					if (files != null) {
+						for (File file : files) {
+							if (stopped) {
+								break;
+							}
+							if (file.isDirectory()) {
+								node.pending.incrementAndGet();
+								queue.offer(new Node(file, node));
+								startHelper();
+							} else {
+								visitor.visitFile(file);
+							}
+						}
+					}
+				}
+			} catch (Throwable t) {
+				fail(t);
+			}
+			complete(node);
+		}
+
+		private void complete(Node node) {
+			while (node != null && node.pending.decrementAndGet() == 0) {
+				if (!stopped) {
+					try {
+						visitor.postVisitDirectory(node.dir);
+					} catch (Throwable t) {
+						fail(t);
+					}
+				}
+				if (node.parent == null) {
+					finished = true;
+					// 唤醒等待中的调用者
+					queue.offer(Node.FINISHED);
+				}
+				node = node.parent;
+			}
+		}
+
+		private void fail(Throwable t) {
+			if (error == null) {
+				error = t;
+			}
+			stopped = true;
+		}
+
+		private void startHelper() {
+			while (true) {
+				int count = helpers.get();
+				if (count >= parallelism - 1) {
+					return;
+				}
+				if (helpers.compareAndSet(count, count + 1)) {
+					break;
+				}
+			}
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				helpers.decrementAndGet();
+			}
+		}
+	}
+
+	private static class Node {
+		static final Node FINISHED = new Node(null, null);
+
+		final File dir;
+		final Node parent;
+		final AtomicInteger pending = new AtomicInteger(1);
+
+		Node(File dir, Node parent) {
+			this.dir = dir;
+			this.parent = parent;
+		}
+	}
+}
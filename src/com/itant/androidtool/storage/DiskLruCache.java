@@ -0,0 +1,839 @@
+package com.itant.androidtool.storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 有容量上限的磁盘缓存，超过上限时删除最久没有使用的条目。
+ * <p>
+ * 每个条目是文件夹下的一个文件(key.0)，写入时先写临时文件，提交时再重命名，读取的一方不会看到写了一半的内容。
+ * 所有操作都追加记录到日志文件journal，打开时根据日志恢复各条目的状态和使用顺序；
+ * 进程在写入过程中退出时，没有提交的临时文件会在下次打开时删除，日志最后一行不完整时忽略该行。
+ * 日志中多余的记录太多时重写日志，重写过程中退出时使用备份的日志
+ * <pre>
+ * DiskLruCache cache = FileTool.getInstance().openDiskCache(context, "images", 20 * 1024 * 1024);
+ * DiskLruCache.Editor editor = cache.edit(key);
+ * if (editor != null) {
+ *     OutputStream out = editor.newOutputStream();
+ *     ...
+ *     editor.commit();
+ * }
+ * </pre>
+ * @author iTant
+ *
+ */
+public class DiskLruCache implements Closeable {
+
+	static final String JOURNAL_FILE = "journal";
+	static final String JOURNAL_FILE_TEMP = "journal.tmp";
+	static final String JOURNAL_FILE_BACKUP = "journal.bkp";
+	static final String MAGIC = "com.itant.androidtool.DiskLruCache";
+	static final String VERSION = "1";
+
+	private static final String CLEAN = "CLEAN";
+	private static final String DIRTY = "DIRTY";
+	private static final String REMOVE = "REMOVE";
+	private static final String READ = "READ";
+
+	private static final String CLEAN_SUFFIX = ".0";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/** 条目的key只能包含字母、数字、下划线和短横线，可以先做MD5等摘要 */
+	private static final Pattern KEY_PATTERN = Pattern.compile("[a-zA-Z0-9_-]{1,120}");
+
+	/** 多余的日志记录超过该数目并且超过条目数时重写日志 */
+	private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+	private final File directory;
+	private final File journalFile;
+	private final File journalFileTemp;
+	private final File journalFileBackup;
+	private long maxSize;
+	private long size;
+	private Writer journalWriter;
+	private int redundantOpCount;
+
+	/** 按使用顺序排列，第一个是最久没有使用的 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private long hitCount;
+	private long missCount;
+	private long writeCount;
+	private long evictionCount;
+	private long evictedBytes;
+
+	private DiskLruCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.journalFile = new File(directory, JOURNAL_FILE);
+		this.journalFileTemp = new File(directory, JOURNAL_FILE_TEMP);
+		this.journalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
+	}
+
+	/**
+	 * 打开缓存，文件夹不存在时创建。同一个文件夹同时只能被一个DiskLruCache使用
+	 *
+	 * @param directory 缓存文件夹，只用于本缓存，其中的其他文件会被删除
+	 * @param maxSize 最多占用的字节数
+	 * @return 缓存
+	 * @throws IOException 无法读取或者创建缓存文件夹
+	 */
+	public static DiskLruCache open(File directory, long maxSize) throws IOException {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot create directory " + directory);
+		}
+
+		DiskLruCache cache = new DiskLruCache(directory, maxSize);
+		// 重写日志时退出，只留下了备份
+		if (cache.journalFileBackup.exists()) {
+			if (cache.journalFile.exists()) {
+				cache.journalFileBackup.delete();
+			} else if (!cache.journalFileBackup.renameTo(cache.journalFile)) {
+				throw new IOException("cannot restore journal from backup");
+			}
+		}
+		if (cache.journalFile.exists()) {
+			try {
+				boolean truncated = cache.readJournal();
+				cache.processJournal();
+				if (truncated) {
+					cache.rebuildJournal();
+				} else {
+					cache.journalWriter = new BufferedWriter(new OutputStreamWriter(
+							new FileOutputStream(cache.journalFile, true), "US-ASCII"));
+				}
+				cache.trimToSize();
+				return cache;
+			} catch (IOException e) {
+				// 日志损坏，清空缓存重新开始
+				e.printStackTrace();
+				cache.delete();
+				if (!directory.mkdirs()) {
+					throw new IOException("cannot create directory " + directory);
+				}
+				cache = new DiskLruCache(directory, maxSize);
+			}
+		}
+		cache.rebuildJournal();
+		cache.processOrphans();
+		return cache;
+	}
+
+	/**
+	 * @return 最后一行是否不完整(写日志时进程退出)
+	 */
+	private boolean readJournal() throws IOException {
+		// 完整的记录都以换行结尾，没有换行时最后一行只写了一部分，其中的数字也可能不完整
+		boolean complete = endsWithNewline(journalFile);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "US-ASCII"));
+		try {
+			String magic = reader.readLine();
+			String version = reader.readLine();
+			String blank = reader.readLine();
+			if (!MAGIC.equals(magic) || !VERSION.equals(version) || !"".equals(blank)) {
+				throw new IOException("unexpected journal header: [" + magic + ", " + version + ", " + blank + "]");
+			}
+			int lineCount = 0;
+			boolean truncated = false;
+			String line = reader.readLine();
+			while (line != null) {
+				String next = reader.readLine();
+				if (next == null && !complete) {
+					truncated = true;
+					break;
+				}
+				if (!readJournalLine(line)) {
+					throw new IOException("corrupt journal line: " + line);
+				}
+				lineCount++;
+				line = next;
+			}
+			redundantOpCount = lineCount - entries.size();
+			return truncated;
+		} finally {
+			closeQuietly(reader);
+		}
+	}
+
+	private static boolean endsWithNewline(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			if (length == 0) {
+				return true;
+			}
+			raf.seek(length - 1);
+			return raf.read() == '\n';
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return 该行是否有效
+	 */
+	private boolean readJournalLine(String line) {
+		String[] parts = line.split(" ");
+		if (parts.length < 2 || !KEY_PATTERN.matcher(parts[1]).matches()) {
+			return false;
+		}
+		String op = parts[0];
+		String key = parts[1];
+		if (REMOVE.equals(op) && parts.length == 2) {
+			entries.remove(key);
+			return true;
+		}
+		Entry entry = entries.get(key);
+		if (CLEAN.equals(op) && parts.length == 3) {
+			long length;
+			try {
+				length = Long.parseLong(parts[2]);
+			} catch (NumberFormatException e) {
+				return false;
+			}
+			if (length < 0) {
+				return false;
+			}
+			if (entry == null) {
+				entry = new Entry(key);
+				entries.put(key, entry);
+			}
+			entry.readable = true;
+			entry.currentEditor = null;
+			entry.length = length;
+			return true;
+		}
+		if (DIRTY.equals(op) && parts.length == 2) {
+			if (entry == null) {
+				entry = new Entry(key);
+				entries.put(key, entry);
+			}
+			entry.currentEditor = new Editor(entry);
+			return true;
+		}
+		if (READ.equals(op) && parts.length == 2) {
+			// 已经通过get()调整了使用顺序
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 计算总大小，删除没有提交的条目和不一致的文件
+	 */
+	private void processJournal() {
+		journalFileTemp.delete();
+		for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+			Entry entry = i.next();
+			if (entry.currentEditor != null) {
+				// 写入时退出，没有提交
+				entry.currentEditor = null;
+				entry.getTempFile().delete();
+				if (!entry.readable) {
+					entry.getCleanFile().delete();
+					i.remove();
+					continue;
+				}
+			}
+			File clean = entry.getCleanFile();
+			if (clean.length() != entry.length) {
+				// 文件被外部修改或删除
+				clean.delete();
+				i.remove();
+				continue;
+			}
+			size += entry.length;
+		}
+		processOrphans();
+	}
+
+	/**
+	 * 删除日志中没有记录的文件，如写入时退出留下的临时文件。只在打开时调用
+	 */
+	private void processOrphans() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.equals(JOURNAL_FILE) || name.equals(JOURNAL_FILE_TEMP) || name.equals(JOURNAL_FILE_BACKUP)) {
+				continue;
+			}
+			// 打开时只剩下已提交的条目；不能用get()，它会改变使用顺序
+			if (!name.endsWith(CLEAN_SUFFIX)
+					|| !entries.containsKey(name.substring(0, name.length() - CLEAN_SUFFIX.length()))) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * 按当前状态重写日志：先写临时文件，旧日志改为备份，再把临时文件改为日志
+	 */
+	private synchronized void rebuildJournal() throws IOException {
+		if (journalWriter != null) {
+			journalWriter.close();
+		}
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFileTemp), "US-ASCII"));
+		try {
+			writer.write(MAGIC);
+			writer.write("\n");
+			writer.write(VERSION);
+			writer.write("\n\n");
+			for (Entry entry : entries.values()) {
+				if (entry.currentEditor != null) {
+					writer.write(DIRTY + ' ' + entry.key + '\n');
+				} else {
+					writer.write(CLEAN + ' ' + entry.key + ' ' + entry.length + '\n');
+				}
+			}
+		} finally {
+			writer.close();
+		}
+
+		if (journalFile.exists()) {
+			journalFileBackup.delete();
+			if (!journalFile.renameTo(journalFileBackup)) {
+				throw new IOException("cannot back up journal");
+			}
+		}
+		if (!journalFileTemp.renameTo(journalFile)) {
+			throw new IOException("cannot rename journal");
+		}
+		journalFileBackup.delete();
+
+		journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), "US-ASCII"));
+		redundantOpCount = 0;
+	}
+
+	/**
+	 * 读取一个条目，同时把它标记为最近使用
+	 *
+	 * @param key 条目的key
+	 * @return 条目的内容，不存在或者还没有提交时返回null；用完后需要关闭
+	 */
+	public synchronized Snapshot get(String key) throws IOException {
+		checkNotClosed();
+		validateKey(key);
+		Entry entry = entries.get(key);
+		if (entry == null || !entry.readable) {
+			missCount++;
+			return null;
+		}
+		InputStream in;
+		try {
+			in = new FileInputStream(entry.getCleanFile());
+		} catch (FileNotFoundException e) {
+			// 文件被外部删除
+			missCount++;
+			removeEntry(entry);
+			return null;
+		}
+		hitCount++;
+		redundantOpCount++;
+		journalWriter.append(READ + ' ' + key + '\n');
+		if (journalRebuildRequired()) {
+			rebuildJournal();
+		}
+		return new Snapshot(key, entry.length, in);
+	}
+
+	/**
+	 * 开始写入一个条目，提交之前读取的一方仍然得到旧的内容
+	 *
+	 * @param key 条目的key
+	 * @return 编辑器，该条目正在被其他编辑器写入时返回null
+	 */
+	public synchronized Editor edit(String key) throws IOException {
+		checkNotClosed();
+		validateKey(key);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(key);
+			entries.put(key, entry);
+		} else if (entry.currentEditor != null) {
+			return null;
+		}
+		Editor editor = new Editor(entry);
+		entry.currentEditor = editor;
+		// 先记录DIRTY，提交前退出时下次打开会删除临时文件
+		journalWriter.write(DIRTY + ' ' + key + '\n');
+		journalWriter.flush();
+		return editor;
+	}
+
+	private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
+		Entry entry = editor.entry;
+		if (entry.currentEditor != editor) {
+			throw new IllegalStateException("edit already completed");
+		}
+		entry.currentEditor = null;
+		File temp = entry.getTempFile();
+		if (success && !temp.exists()) {
+			// 没有写入任何内容，当作放弃
+			success = false;
+		}
+
+		if (success) {
+			File clean = entry.getCleanFile();
+			if (!temp.renameTo(clean)) {
+				clean.delete();
+				if (!temp.renameTo(clean)) {
+					temp.delete();
+					success = false;
+				}
+			}
+		} else {
+			temp.delete();
+		}
+
+		redundantOpCount++;
+		if (success) {
+			long length = entry.getCleanFile().length();
+			size = size - (entry.readable ? entry.length : 0) + length;
+			entry.readable = true;
+			entry.length = length;
+			writeCount++;
+			journalWriter.write(CLEAN + ' ' + entry.key + ' ' + length + '\n');
+		} else if (entry.readable) {
+			// 放弃写入，保留原来的内容
+			journalWriter.write(CLEAN + ' ' + entry.key + ' ' + entry.length + '\n');
+		} else {
+			entries.remove(entry.key);
+			journalWriter.write(REMOVE + ' ' + entry.key + '\n');
+		}
+		journalWriter.flush();
+
+		if (success && entry.length > maxSize) {
+			// 单个条目比整个缓存还大，只删除它自己，不清空其他条目
+			removeEntry(entry);
+			evictionCount++;
+			evictedBytes += entry.length;
+		}
+		trimToSize();
+		if (journalRebuildRequired()) {
+			rebuildJournal();
+		}
+	}
+
+	/**
+	 * 删除一个条目，正在写入的条目不能删除
+	 *
+	 * @param key 条目的key
+	 * @return 是否删除了
+	 */
+	public synchronized boolean remove(String key) throws IOException {
+		checkNotClosed();
+		validateKey(key);
+		Entry entry = entries.get(key);
+		if (entry == null || entry.currentEditor != null) {
+			return false;
+		}
+		removeEntry(entry);
+		if (journalRebuildRequired()) {
+			rebuildJournal();
+		}
+		return true;
+	}
+
+	private void removeEntry(Entry entry) throws IOException {
+		File file = entry.getCleanFile();
+		if (file.exists() && !file.delete()) {
+			throw new IOException("failed to delete " + file);
+		}
+		if (entry.readable) {
+			size -= entry.length;
+		}
+		entries.remove(entry.key);
+		redundantOpCount++;
+		journalWriter.write(REMOVE + ' ' + entry.key + '\n');
+		journalWriter.flush();
+	}
+
+	/**
+	 * 从最久没有使用的条目开始删除，直到总大小不超过上限，正在写入的条目跳过
+	 */
+	private void trimToSize() throws IOException {
+		if (size <= maxSize) {
+			return;
+		}
+		for (Entry entry : new ArrayList<Entry>(entries.values())) {
+			if (size <= maxSize) {
+				break;
+			}
+			if (entry.currentEditor != null || !entry.readable) {
+				continue;
+			}
+			removeEntry(entry);
+			evictionCount++;
+			evictedBytes += entry.length;
+		}
+	}
+
+	private boolean journalRebuildRequired() {
+		return redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= entries.size();
+	}
+
+	/**
+	 * 把日志写入文件系统
+	 */
+	public synchronized void flush() throws IOException {
+		checkNotClosed();
+		trimToSize();
+		journalWriter.flush();
+	}
+
+	/**
+	 * 关闭缓存，正在进行的写入被放弃
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (journalWriter == null) {
+			return;
+		}
+		for (Entry entry : new ArrayList<Entry>(entries.values())) {
+			if (entry.currentEditor != null) {
+				entry.currentEditor.abort();
+			}
+		}
+		trimToSize();
+		journalWriter.close();
+		journalWriter = null;
+	}
+
+	/**
+	 * 关闭缓存并删除所有文件
+	 */
+	public void delete() throws IOException {
+		close();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	public synchronized boolean isClosed() {
+		return journalWriter == null;
+	}
+
+	private void checkNotClosed() {
+		if (journalWriter == null) {
+			throw new IllegalStateException("cache is closed");
+		}
+	}
+
+	private static void validateKey(String key) {
+		if (!KEY_PATTERN.matcher(key).matches()) {
+			throw new IllegalArgumentException("keys must match [a-zA-Z0-9_-]{1,120}: \"" + key + "\"");
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return 已提交条目的总字节数
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	public synchronized long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * 修改容量上限，变小时立即删除多出的条目
+	 *
+	 * @param maxSize 最多占用的字节数
+	 */
+	public synchronized void setMaxSize(long maxSize) throws IOException {
+		this.maxSize = maxSize;
+		if (journalWriter != null) {
+			trimToSize();
+			journalWriter.flush();
+		}
+	}
+
+	/**
+	 * @return 已提交的条目数
+	 */
+	public synchronized int getEntryCount() {
+		int count = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.readable) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return 成功提交的写入次数
+	 */
+	public synchronized long getWriteCount() {
+		return writeCount;
+	}
+
+	/**
+	 * @return 因超过容量上限被删除的条目数
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return 因超过容量上限被删除的字节数
+	 */
+	public synchronized long getEvictedBytes() {
+		return evictedBytes;
+	}
+
+	/**
+	 * @return 命中率，没有读取过时返回0
+	 */
+	public synchronized float getHitRate() {
+		long total = hitCount + missCount;
+		return total == 0 ? 0 : (float) hitCount / total;
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// 关闭失败时无需处理
+			}
+		}
+	}
+
+	/**
+	 * 一个条目的内容，读取的是get()时已提交的版本，之后的写入和删除不影响它
+	 */
+	public static class Snapshot implements Closeable {
+		private final String key;
+		private final long length;
+		private final InputStream in;
+
+		Snapshot(String key, long length, InputStream in) {
+			this.key = key;
+			this.length = length;
+			this.in = in;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return 内容的字节数
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		public InputStream getInputStream() {
+			return in;
+		}
+
+		/**
+		 * @return 读取全部内容，适合较小的条目
+		 */
+		public byte[] getBytes() throws IOException {
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("entry too large: " + length);
+			}
+			byte[] bytes = new byte[(int) length];
+			int offset = 0;
+			while (offset < bytes.length) {
+				int read = in.read(bytes, offset, bytes.length - offset);
+				if (read == -1) {
+					throw new EOFException("entry truncated at " + offset + " of " + length);
+				}
+				offset += read;
+			}
+			return bytes;
+		}
+
+		@Override
+		public void close() {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * 写入一个条目，必须调用{@link #commit()}或者{@link #abort()}之一结束
+	 */
+	public final class Editor {
+		private final Entry entry;
+		private boolean hasErrors;
+		private boolean done;
+
+		private Editor(Entry entry) {
+			this.entry = entry;
+		}
+
+		/**
+		 * 写入的是临时文件，提交后才对读取可见。写入出错时不会抛出异常，而是在提交时放弃本次写入
+		 *
+		 * @return 输出流，用完后需要关闭
+		 */
+		public OutputStream newOutputStream() throws IOException {
+			synchronized (DiskLruCache.this) {
+				if (done || entry.currentEditor != this) {
+					throw new IllegalStateException("edit already completed");
+				}
+				FileOutputStream out;
+				try {
+					out = new FileOutputStream(entry.getTempFile());
+				} catch (FileNotFoundException e) {
+					// 文件夹被外部删除
+					directory.mkdirs();
+					out = new FileOutputStream(entry.getTempFile());
+				}
+				return new FaultHidingOutputStream(out);
+			}
+		}
+
+		/**
+		 * 写入全部内容并提交
+		 *
+		 * @param bytes 内容
+		 */
+		public void set(byte[] bytes) throws IOException {
+			OutputStream out = newOutputStream();
+			try {
+				out.write(bytes);
+			} finally {
+				out.close();
+			}
+			commit();
+		}
+
+		/**
+		 * 提交写入，重命名临时文件并记录日志，超过容量上限时删除最久没有使用的条目
+		 *
+		 * @throws IOException 写入时出过错，本次写入已被放弃
+		 */
+		public void commit() throws IOException {
+			if (hasErrors) {
+				completeEdit(this, false);
+				done = true;
+				throw new IOException("write failed, edit aborted: " + entry.key);
+			}
+			completeEdit(this, true);
+			done = true;
+		}
+
+		/**
+		 * 放弃写入，条目保持原来的内容
+		 */
+		public void abort() throws IOException {
+			if (!done) {
+				completeEdit(this, false);
+				done = true;
+			}
+		}
+
+		/**
+		 * 记录写入错误，而不是让调用者在写到一半时处理异常
+		 */
+		private class FaultHidingOutputStream extends FilterOutputStream {
+			FaultHidingOutputStream(OutputStream out) {
+				super(out);
+			}
+
+			@Override
+			public void write(int b) {
+				try {
+					out.write(b);
+				} catch (IOException e) {
+					hasErrors = true;
+				}
+			}
+
+			@Override
+			public void write(byte[] buffer, int offset, int length) {
+				try {
+					out.write(buffer, offset, length);
+				} catch (IOException e) {
+					hasErrors = true;
+				}
+			}
+
+			@Override
+			public void flush() {
+				try {
+					out.flush();
+				} catch (IOException e) {
+					hasErrors = true;
+				}
+			}
+
+			@Override
+			public void close() {
+				try {
+					out.close();
+				} catch (IOException e) {
+					hasErrors = true;
+				}
+			}
+		}
+	}
+
+	private final class Entry {
+		private final String key;
+		/** 已提交内容的字节数 */
+		private long length;
+		/** 是否已经提交过 */
+		private boolean readable;
+		/** 正在写入的编辑器，没有时为null */
+		private Editor currentEditor;
+
+		private Entry(String key) {
+			this.key = key;
+		}
+
+		File getCleanFile() {
+			return new File(directory, key + CLEAN_SUFFIX);
+		}
+
+		File getTempFile() {
+			return new File(directory, key + TEMP_SUFFIX);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package com.itant.androidtool.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 文件拷贝：优先用FileChannel.transferTo由内核直接拷贝，不支持时退回到大缓冲区读写。
+ * 默认先写到目标目录下的临时文件，写完再重命名，拷贝失败或中途退出不会留下不完整的目标文件
+ * @author iTant
+ *
+ */
+public class FileCopier {
+
+	/** 退回到缓冲区读写时的缓冲区大小 */
+	public static final int BUFFER_SIZE = 256 * 1024;
+
+	/** transferTo单次传输的上限，部分内核一次最多只能传输2GB以内 */
+	private static final long TRANSFER_CHUNK = 64L * 1024 * 1024;
+
+	private static final String TEMP_SUFFIX = ".copying";
+
+	private boolean atomic = true;
+	private boolean sync;
+
+	/**
+	 * @param atomic true:先写临时文件再重命名为目标文件(默认)；false:直接写目标文件
+	 * @return this
+	 */
+	public FileCopier setAtomic(boolean atomic) {
+		this.atomic = atomic;
+		return this;
+	}
+
+	/**
+	 * @param sync true:关闭前把数据同步到磁盘(fsync)，断电后也不会丢失，但会慢很多。默认false
+	 * @return this
+	 */
+	public FileCopier setSync(boolean sync) {
+		this.sync = sync;
+		return this;
+	}
+
+	/**
+	 * 拷贝文件，目标文件已存在时覆盖
+	 *
+	 * @param fromFile 源文件
+	 * @param toFile 目标文件，所在的文件夹必须已存在
+	 * @return 拷贝的字节数
+	 * @throws CopyException 拷贝失败，可以从中得到失败前已拷贝的字节数
+	 */
+	public long copy(File fromFile, File toFile) throws CopyException {
+		if (fromFile.getAbsoluteFile().equals(toFile.getAbsoluteFile())) {
+			throw new CopyException("source and target are the same file: " + fromFile, 0, null);
+		}
+		// 临时文件名带上线程号，同时拷贝到同一个目标时互不干扰
+		File target = atomic ? new File(toFile.getPath() + "." + Thread.currentThread().getId() + TEMP_SUFFIX) : toFile;
+		// 拷贝进度，缓冲区读写过程中也会更新，失败时由它得到已拷贝的字节数
+		Progress progress = new Progress();
+		FileInputStream in = null;
+		FileOutputStream out = null;
+		boolean success = false;
+		try {
+			in = new FileInputStream(fromFile);
+			out = new FileOutputStream(target);
+			FileChannel inChannel = in.getChannel();
+			FileChannel outChannel = out.getChannel();
+			long size = inChannel.size();
+
+			try {
+				while (progress.copied < size) {
+					long transferred = inChannel.transferTo(progress.copied,
+							Math.min(TRANSFER_CHUNK, size - progress.copied), outChannel);
+					if (transferred <= 0) {
+						// 不支持零拷贝或者文件被截短，剩下的交给缓冲区读写处理
+						break;
+					}
+					progress.copied += transferred;
+				}
+			} catch (IOException e) {
+				// 部分文件系统(如某些设备的SD卡)不支持transferTo，从已写出的位置继续
+			}
+			copyBuffered(inChannel, outChannel, progress);
+
+			if (sync) {
+				outChannel.force(true);
+			}
+			out.close();
+			out = null;
+			if (atomic) {
+				rename(target, toFile);
+			}
+			success = true;
+			return progress.copied;
+		} catch (IOException e) {
+			throw new CopyException("copy " + fromFile + " to " + toFile + " failed after " + progress.copied + " bytes",
+					progress.copied, e);
+		} finally {
+			closeQuietly(in);
+			closeQuietly(out);
+			if (!success && atomic) {
+				target.delete();
+			}
+		}
+	}
+
+	/**
+	 * 从progress记录的位置开始用缓冲区读写到文件结尾，每写出一次就更新progress
+	 */
+	private static void copyBuffered(FileChannel in, FileChannel out, Progress progress) throws IOException {
+		long position = progress.copied;
+		in.position(position);
+		out.position(position);
+		ByteBuffer buffer = null;
+		while (true) {
+			if (buffer == null) {
+				// 大多数情况下transferTo已经拷完，只有需要时才分配
+				if (position >= in.size()) {
+					break;
+				}
+				buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			}
+			buffer.clear();
+			int read = in.read(buffer);
+			if (read == -1) {
+				break;
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				position += out.write(buffer);
+				progress.copied = position;
+			}
+		}
+		// 源文件在拷贝过程中变短时，去掉目标文件多出的部分
+		out.truncate(position);
+	}
+
+	/**
+	 * 一次拷贝已写出的字节数
+	 */
+	private static class Progress {
+		long copied;
+	}
+
+	private static void rename(File from, File to) throws IOException {
+		if (from.renameTo(to)) {
+			return;
+		}
+		// 部分系统不允许覆盖已存在的文件
+		if (to.exists() && to.delete() && from.renameTo(to)) {
+			return;
+		}
+		throw new IOException("rename " + from + " to " + to + " failed");
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// 关闭失败时无需处理
+			}
+		}
+	}
+
+	/**
+	 * 拷贝失败，带有失败前已拷贝的字节数
+	 */
+	public static class CopyException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		private final long bytesCopied;
+
+		public CopyException(String message, long bytesCopied, Throwable cause) {
+			super(message);
+			this.bytesCopied = bytesCopied;
+			if (cause != null) {
+				initCause(cause);
+			}
+		}
+
+		/**
+		 * @return 失败前已拷贝的字节数
+		 */
+		public long getBytesCopied() {
+			return bytesCopied;
+		}
+	}
+}
@@ -0,0 +1,316 @@
+package com.itant.androidtool.storage;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+/**
+ * 按条件搜索文件夹下的文件，边遍历边返回结果，不需要等整个文件夹遍历完。
+ * 可以限制结果个数和遍历深度，也可以在其他线程中随时取消
+ * <pre>
+ * FileSearch search = new FileSearch(root).setGlob("*.pcap").setLimit(100);
+ * for (File file : search) {
+ *     // 每找到一个就处理一个
+ * }
+ * </pre>
+ * @author iTant
+ *
+ */
+public class FileSearch implements Iterable<File> {
+
+	/**
+	 * 搜索结果的回调
+	 */
+	public interface Callback {
+		/**
+		 * 找到一个文件，在调用{@link FileSearch#search(Callback)}的线程中调用
+		 *
+		 * @return false:停止搜索
+		 */
+		boolean onFound(File file);
+	}
+
+	private final File root;
+	private Pattern namePattern;
+	private String suffix;
+	private long minSize = -1;
+	private long maxSize = -1;
+	private long modifiedAfter = -1;
+	private long modifiedBefore = -1;
+	private int maxDepth = Integer.MAX_VALUE;
+	private int limit = Integer.MAX_VALUE;
+	private final List<FileFilter> filters = new ArrayList<FileFilter>();
+	private volatile boolean canceled;
+
+	/**
+	 * @param root 搜索的根文件夹
+	 */
+	public FileSearch(File root) {
+		this.root = root;
+	}
+
+	/**
+	 * @param glob 文件名的通配符，支持*、?和[abc]/[!abc]，如"*.pcap"、"log_??.txt"
+	 * @return this
+	 */
+	public FileSearch setGlob(String glob) {
+		this.namePattern = glob == null ? null : Pattern.compile(globToRegex(glob));
+		return this;
+	}
+
+	/**
+	 * @param suffix 文件名的后缀，如".exe"
+	 * @return this
+	 */
+	public FileSearch setSuffix(String suffix) {
+		this.suffix = suffix;
+		return this;
+	}
+
+	/**
+	 * @param minSize 文件的最小字节数(包含)，-1表示不限制
+	 * @param maxSize 文件的最大字节数(包含)，-1表示不限制
+	 * @return this
+	 */
+	public FileSearch setSizeRange(long minSize, long maxSize) {
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	/**
+	 * @param after 最后修改时间不早于该时间(毫秒，包含)，-1表示不限制
+	 * @param before 最后修改时间早于该时间(毫秒，不包含)，-1表示不限制
+	 * @return this
+	 */
+	public FileSearch setModifiedRange(long after, long before) {
+		this.modifiedAfter = after;
+		this.modifiedBefore = before;
+		return this;
+	}
+
+	/**
+	 * @param maxDepth 最大遍历深度，1表示只搜索根文件夹下的文件，不进入子文件夹
+	 * @return this
+	 */
+	public FileSearch setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * @param limit 最多返回的结果数，找够后立即停止遍历
+	 * @return this
+	 */
+	public FileSearch setLimit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * @param filter 其他条件，在文件名、大小和修改时间都满足后才调用
+	 * @return this
+	 */
+	public FileSearch addFilter(FileFilter filter) {
+		filters.add(filter);
+		return this;
+	}
+
+	/**
+	 * 取消搜索，可以在其他线程中调用，正在进行的遍历会在处理完当前条目后结束
+	 */
+	public void cancel() {
+		canceled = true;
+	}
+
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	/**
+	 * 在当前线程中搜索，每找到一个文件回调一次
+	 *
+	 * @param callback 结果回调
+	 * @return 找到的文件数
+	 */
+	public int search(Callback callback) {
+		int count = 0;
+		Iterator<File> iterator = iterator();
+		while (iterator.hasNext()) {
+			count++;
+			if (!callback.onFound(iterator.next())) {
+				break;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return 按条件找到的所有文件
+	 */
+	public List<File> toList() {
+		List<File> result = new ArrayList<File>();
+		for (File file : this) {
+			result.add(file);
+		}
+		return result;
+	}
+
+	/**
+	 * 每次调用都重新开始遍历，深度优先，hasNext()时才列出需要的文件夹
+	 */
+	@Override
+	public Iterator<File> iterator() {
+		return new SearchIterator();
+	}
+
+	/**
+	 * 先比较文件名，不访问磁盘；需要时再读取大小和修改时间
+	 */
+	private boolean matches(File file) {
+		String name = file.getName();
+		if (suffix != null && !name.endsWith(suffix)) {
+			return false;
+		}
+		if (namePattern != null && !namePattern.matcher(name).matches()) {
+			return false;
+		}
+		if (minSize >= 0 || maxSize >= 0) {
+			long size = file.length();
+			if ((minSize >= 0 && size < minSize) || (maxSize >= 0 && size > maxSize)) {
+				return false;
+			}
+		}
+		if (modifiedAfter >= 0 || modifiedBefore >= 0) {
+			long modified = file.lastModified();
+			if ((modifiedAfter >= 0 && modified < modifiedAfter) || (modifiedBefore >= 0 && modified >= modifiedBefore)) {
+				return false;
+			}
+		}
+		for (FileFilter filter : filters) {
+			if (!filter.accept(file)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static String globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder(glob.length() + 8);
+		boolean inClass = false;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (inClass) {
+				if (c == ']') {
+					inClass = false;
+				} else if (c == '\\' || c == '[' || c == '&') {
+					regex.append('\\');
+				}
+				regex.append(c);
+				continue;
+			}
+			switch (c) {
+			case '*':
+				regex.append(".*");
+				break;
+			case '?':
+				regex.append('.');
+				break;
+			case '[':
+				inClass = true;
+				regex.append('[');
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '!') {
+					regex.append('^');
+					i++;
+				}
+				break;
+			default:
+				if ("\\.^$|+(){}]".indexOf(c) >= 0) {
+					regex.append('\\');
+				}
+				regex.append(c);
+				break;
+			}
+		}
+		if (inClass) {
+			throw new IllegalArgumentException("unclosed '[' in glob: " + glob);
+		}
+		return regex.toString();
+	}
+
+	private class SearchIterator implements Iterator<File> {
+		private final ArrayDeque<Level> levels = new ArrayDeque<Level>();
+		private File next;
+		private int returned;
+
+		SearchIterator() {
+			File[] files = root.listFiles();
+			if (files != null) {
+				levels.push(new Level(files, 1));
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next != null) {
+				return true;
+			}
+			if (returned >= limit) {
+				levels.clear();
+				return false;
+			}
+			while (!canceled && !levels.isEmpty()) {
+				Level level = levels.peek();
+				if (level.index == level.files.length) {
+					levels.pop();
+					continue;
+				}
+				File file = level.files[level.index++];
+				if (file.isDirectory()) {
+					if (level.depth < maxDepth) {
+						File[] files = file.listFiles();
+						if (files != null) {
+							levels.push(new Level(files, level.depth + 1));
+						}
+					}
+				} else if (matches(file)) {
+					next = file;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public File next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			File file = next;
+			next = null;
+			returned++;
+			return file;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static class Level {
+		final File[] files;
+		final int depth;
+		int index;
+
+		Level(File[] files, int depth) {
+			this.files = files;
+			this.depth = depth;
+		}
+	}
+}
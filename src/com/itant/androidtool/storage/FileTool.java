@@ -1,13 +1,16 @@
 package com.itant.androidtool.storage;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.content.Context;
 import android.os.Environment;
@@ -21,6 +24,9 @@ import android.text.TextUtils;
  */
 public class FileTool {
 	
+	/** 已打开的文件夹大小索引，经过本类的写入和删除会通知它们 */
+	private final List<DirectorySizeIndex> sizeIndexes = new CopyOnWriteArrayList<DirectorySizeIndex>();
+	
 	private FileTool() {}
 	
 	private static class ToolProvider {
@@ -54,6 +60,23 @@ public class FileTool {
 		return cacheDir.getPath();
 	}
 
+	/**
+	 * 在应用的file文件夹下打开一个有容量上限的磁盘缓存，超过上限时删除最久没有使用的条目
+	 * 
+	 * @param context 上下文
+	 * @param forlderName 缓存文件夹的名字，该文件夹只能用于这个缓存
+	 * @param maxSize 最多占用的字节数
+	 * @return 缓存，不再使用时需要关闭
+	 * @throws IOException 无法创建或读取缓存文件夹
+	 */
+	public DiskLruCache openDiskCache(Context context, String forlderName, long maxSize) throws IOException {
+		String path = makeFilePath(context, forlderName);
+		if (path == null) {
+			throw new IllegalArgumentException("forlderName is empty");
+		}
+		return DiskLruCache.open(new File(path), maxSize);
+	}
+
 	/**
 	 * 获取文件目录
 	 * 
@@ -92,38 +115,35 @@ public class FileTool {
 	}
 	
 	/**
-	 * 拷贝文件到指定目录
+	 * 拷贝文件到指定目录，先写临时文件再重命名，失败时不会留下不完整的目标文件
 	 * 
 	 * @param fromFile 源文件完整路径
 	 * @param toFile 目标文件完整路径
+	 * @return 拷贝的字节数，失败时返回-1
 	 */
-	public void copyFile(String fromFile, String toFile) {
-		InputStream inputStream = null;
-		OutputStream outputStream = null;
+	public long copyFile(String fromFile, String toFile) {
 		try {
-			inputStream = new FileInputStream(fromFile);
-			outputStream = new FileOutputStream(toFile);
-			byte[] b = new byte[1024];
-			int readedLength = -1;
-			while ((readedLength = inputStream.read(b)) != -1) {
-				outputStream.write(b, 0, readedLength);
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			return copyFile(new File(fromFile), new File(toFile), false);
 		} catch (IOException e) {
 			e.printStackTrace();
+			return -1;
+		}
+	}
+	
+	/**
+	 * 拷贝文件，目标文件已存在时覆盖
+	 * 
+	 * @param fromFile 源文件
+	 * @param toFile 目标文件
+	 * @param sync 是否在完成前把数据同步到磁盘
+	 * @return 拷贝的字节数
+	 * @throws FileCopier.CopyException 拷贝失败，带有失败前已拷贝的字节数
+	 */
+	public long copyFile(File fromFile, File toFile, boolean sync) throws FileCopier.CopyException {
+		try {
+			return new FileCopier().setSync(sync).copy(fromFile, toFile);
 		} finally {
-			try {
-				if (inputStream != null) {
-					inputStream.close();
-				}
-				if (outputStream != null) {
-					outputStream.close();
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-
+			notifyFileChanged(toFile);
 		}
 	}
 	
@@ -173,72 +193,98 @@ public class FileTool {
 	}
 	
 	/**
-	 * 搜索某文件夹下面所有的报文(可能有子文件夹)
+	 * 搜索某文件夹下的文件，边遍历边返回结果，支持通配符、大小、修改时间、结果个数、深度等条件，可以随时取消
+	 * 
+	 * @param rootFile 根目录
+	 * @return 搜索条件，遍历它时才开始搜索
+	 */
+	public FileSearch searchFiles(File rootFile) {
+		return new FileSearch(rootFile);
+	}
+	
+	/**
+	 * 搜索某文件夹下面所有的报文(可能有子文件夹)，多个子文件夹并行搜索，结果的顺序不固定。
+	 * 需要边搜索边显示或者找到一部分就停止时使用{@link #searchFiles(File)}
 	 * 
 	 * @param rootFile 根目录
 	 * @param suffix 后缀（如".exe"）
 	 */
-	public void searchePacket(File rootFile, String suffix, List<File> fileList) {
-		File[] files = rootFile.listFiles();
-		if (files != null) {
-			for (File file : files) {
-				if (file.isFile()) {
-					String fileName = file.getName();
-					if (fileName.endsWith(suffix)) {
-						// 如果是报文文件的话
-						fileList.add(file);
-					}
-				} else if (file.isDirectory()) {
-					searchePacket(file, suffix, fileList);
+	public void searchePacket(File rootFile, final String suffix, List<File> fileList) {
+		final Queue<File> found = new ConcurrentLinkedQueue<File>();
+		DirectoryWalker.getDefault().walk(rootFile, new DirectoryWalker.Visitor() {
+			@Override
+			public void visitFile(File file) {
+				// 先比较文件名，不需要访问磁盘
+				if (file.getName().endsWith(suffix)) {
+					// 如果是报文文件的话
+					found.add(file);
 				}
 			}
-		}
+			
+			@Override
+			public void postVisitDirectory(File dir) {
+			}
+		});
+		fileList.addAll(found);
 	}
 	
 	/**
-	 * 删除某文件夹下面所有的报文
+	 * 删除某文件夹下面所有的报文，子文件夹的内容删除后再删除子文件夹
 	 * 
 	 * @param rootFile 根目录
+	 * @return 是否全部删除成功，有文件删除失败时只保留它所在的各级文件夹，其余文件和文件夹仍会被删除
 	 */
 	public boolean deletePacketsByDirectory(File rootFile) {
-		File[] files = rootFile.listFiles();
-		if (files != null) {
-			for (File file : files) {
-				if (file.isFile()) {
-					// 是文件，直接删除
-					if (!file.delete()) {
-						return false;
-					}
-				} else if (file.isDirectory()) {
-					// 是目录，继续递归删除
-					if (!deletePacketsByDirectory(file)) {
-						return false;
+		// 有内容没删掉的文件夹，子文件夹总是先于父文件夹完成，所以失败可以逐级向上传递
+		final Set<File> failed = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+		DirectoryWalker.getDefault().walk(rootFile, new DirectoryWalker.Visitor() {
+			@Override
+			public void visitFile(File file) {
+				// 是文件，直接删除
+				if (!file.delete()) {
+					failed.add(file.getParentFile());
+				}
+			}
+			
+			@Override
+			public void postVisitDirectory(File dir) {
+				// 子文件夹的内容已经删完，只有自身或子孙有删除失败时才保留
+				if (failed.contains(dir) || !dir.delete()) {
+					failed.add(dir);
+					File parent = dir.getParentFile();
+					if (parent != null) {
+						failed.add(parent);
 					}
 				}
 			}
-		}
-		
-		return rootFile.delete();
+		});
+		notifyFileChanged(rootFile);
+		return failed.isEmpty();
 	}
 	
 	/**
-	 * 计算缓存大小
+	 * 计算缓存大小。targetFile已通过{@link #openSizeIndex(File, File)}建立索引时只重新统计有变化的子文件夹，
+	 * 否则多个子文件夹并行完整统计
 	 * @param targetFile 目标文件夹
 	 * @return 本应用的磁盘缓存大小（单位：bit）
 	 */
 	public long calculateCacheSize(File targetFile) {
-		long size = 0;
-		File[] files = targetFile.listFiles();
-		if (files != null) {
-			for (File file : files) {
-				if (file.isDirectory()) {
-					size += calculateCacheSize(file);
-				} else {
-					size += file.length();
-				}
-			}
+		DirectorySizeIndex index = findSizeIndex(targetFile);
+		if (index != null) {
+			return index.getSize();
 		}
-		return size;
+		final AtomicLong size = new AtomicLong();
+		DirectoryWalker.getDefault().walk(targetFile, new DirectoryWalker.Visitor() {
+			@Override
+			public void visitFile(File file) {
+				size.addAndGet(file.length());
+			}
+			
+			@Override
+			public void postVisitDirectory(File dir) {
+			}
+		});
+		return size.get();
 	}
 	
 	/**
@@ -248,16 +294,65 @@ public class FileTool {
 	 * 
 	 */
 	public void deleteFiles(File targetFile) {
-		File[] files = targetFile.listFiles();
-		if (files != null) {
-			for (File file : files) {
-				if (file.isDirectory()) {
-					deleteFiles(file);
-				} else {
-					file.delete();
-				}
+		DirectoryWalker.getDefault().walk(targetFile, new DirectoryWalker.Visitor() {
+			@Override
+			public void visitFile(File file) {
+				file.delete();
+			}
+			
+			@Override
+			public void postVisitDirectory(File dir) {
+			}
+		});
+		notifyFileChanged(targetFile);
+	}
+	
+	/**
+	 * 为文件夹建立大小索引，之后{@link #calculateCacheSize(File)}不再每次完整遍历。
+	 * 同一个文件夹只会有一个索引
+	 * 
+	 * @param rootFile 要统计大小的文件夹
+	 * @param indexFile 保存索引的文件，不要放在rootFile里面
+	 * @return 该文件夹的索引
+	 */
+	public synchronized DirectorySizeIndex openSizeIndex(File rootFile, File indexFile) {
+		DirectorySizeIndex index = findSizeIndex(rootFile);
+		if (index == null) {
+			index = new DirectorySizeIndex(rootFile, indexFile);
+			sizeIndexes.add(index);
+		}
+		return index;
+	}
+	
+	/**
+	 * 关闭文件夹的大小索引，索引文件保留，下次打开时继续使用
+	 * 
+	 * @param index 由{@link #openSizeIndex(File, File)}得到的索引
+	 */
+	public synchronized void closeSizeIndex(DirectorySizeIndex index) {
+		index.save();
+		sizeIndexes.remove(index);
+	}
+	
+	/**
+	 * 通知文件夹大小索引某个文件或文件夹发生了变化。不经过本类直接写入文件(尤其是修改已有文件的内容)时调用
+	 * 
+	 * @param file 新建、写入或者删除的文件或文件夹
+	 */
+	public void notifyFileChanged(File file) {
+		for (DirectorySizeIndex index : sizeIndexes) {
+			index.notifyChanged(file);
+		}
+	}
+	
+	private DirectorySizeIndex findSizeIndex(File rootFile) {
+		File root = rootFile.getAbsoluteFile();
+		for (DirectorySizeIndex index : sizeIndexes) {
+			if (index.getRoot().equals(root)) {
+				return index;
 			}
 		}
+		return null;
 	}
 	
 	/**
@@ -273,6 +368,7 @@ public class FileTool {
                 FileOutputStream outStream = context.openFileOutput(fileName, Context.MODE_PRIVATE);
                 outStream.write(info.getBytes());
                 outStream.close();
+                notifyFileChanged(context.getFileStreamPath(fileName));
             } catch (Exception e) {
                 e.printStackTrace();
             }
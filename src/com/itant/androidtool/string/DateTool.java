@@ -1,8 +1,12 @@
 package com.itant.androidtool.string;
 
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 
 import android.content.ContentResolver;
 import android.content.Context;
@@ -14,7 +18,26 @@ import android.content.Context;
  */
 public class DateTool {
 
-	private static final String FORMAT_CURRENT_DAY = "yyyyMMdd";
+	/** 每个线程最多缓存的SimpleDateFormat个数 */
+	private static final int MAX_CACHED_FORMATS = 16;
+	
+	/**
+	 * SimpleDateFormat创建开销大且不是线程安全的，因此每个线程各自缓存一份，按格式和语言区分，
+	 * 超过上限时淘汰最久未使用的
+	 */
+	private static final ThreadLocal<Map<String, SimpleDateFormat>> FORMAT_CACHE = new ThreadLocal<Map<String, SimpleDateFormat>>() {
+		@Override
+		protected Map<String, SimpleDateFormat> initialValue() {
+			return new LinkedHashMap<String, SimpleDateFormat>(MAX_CACHED_FORMATS, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, SimpleDateFormat> eldest) {
+					return size() > MAX_CACHED_FORMATS;
+				}
+			};
+		}
+	};
 	
 	private DateTool() {}
 	
@@ -31,12 +54,45 @@ public class DateTool {
 		return getInstance();  
 	}
 	
+	/**
+	 * 获取当前线程缓存的SimpleDateFormat，返回的对象只能在当前线程中使用，且不要修改其格式
+	 * 
+	 * @param pattern 时间格式，如"yyyy-MM-dd HH:mm:ss"
+	 * @param locale 语言
+	 * @return 对应的SimpleDateFormat
+	 */
+	public static SimpleDateFormat getDateFormat(String pattern, Locale locale) {
+		Map<String, SimpleDateFormat> cache = FORMAT_CACHE.get();
+		String key = pattern + '\u0000' + locale;
+		SimpleDateFormat sdf = cache.get(key);
+		TimeZone zone = TimeZone.getDefault();
+		if (sdf == null) {
+			sdf = new SimpleDateFormat(pattern, locale);
+			cache.put(key, sdf);
+		} else if (!zone.getID().equals(sdf.getTimeZone().getID())) {
+			// 系统时区改变后同步到已缓存的对象
+			sdf.setTimeZone(zone);
+		}
+		return sdf;
+	}
+	
+	/**
+	 * 获取当前线程缓存的、使用默认语言的SimpleDateFormat
+	 * 
+	 * @param pattern 时间格式
+	 * @return 对应的SimpleDateFormat
+	 */
+	public static SimpleDateFormat getDateFormat(String pattern) {
+		return getDateFormat(pattern, Locale.getDefault());
+	}
+	
 	/**
 	 * @return 精确到天的日期(如20140506，表示2014年5月6日)
 	 */
 	public String getCurrentDate() {
-		SimpleDateFormat sdf = new SimpleDateFormat(FORMAT_CURRENT_DAY, Locale.getDefault());
-		return sdf.format(new Date());
+		char[] buf = new char[TimestampFormatter.DAY_LENGTH];
+		TimestampFormatter.getDefault().formatDay(System.currentTimeMillis(), buf, 0);
+		return new String(buf);
 	}
 	
 	/**
@@ -46,8 +102,7 @@ public class DateTool {
 	 * @return 精确到天的日期(如20140506，表示2014年5月6日)
 	 */
 	public String getFormattedTime(String timeFormat) {
-		SimpleDateFormat sdf = new SimpleDateFormat(timeFormat, Locale.getDefault());
-		return sdf.format(new Date());
+		return getDateFormat(timeFormat).format(new Date());
 	}
 	
 	/**
@@ -71,12 +126,21 @@ public class DateTool {
 	}
 	
 	/**
-	 * 生成一个 uuid
+	 * 生成一个 uuid，多线程同时调用或者同一毫秒内多次调用也不会重复
 	 * 
+	 * @return 13位的字符串，按生成顺序递增，见{@link IdGenerator#toString(long)}
 	 */
 	public String generateUUID() {
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmssSSS");
-		return dateFormat.format(new Date());
+		return IdGenerator.getDefault().nextIdString();
+	}
+	
+	/**
+	 * 生成一个不重复的long型ID
+	 * 
+	 * @return 按生成顺序递增的ID，见{@link IdGenerator}
+	 */
+	public long generateId() {
+		return IdGenerator.getDefault().nextId();
 	}
 	
 	/**
@@ -85,8 +149,7 @@ public class DateTool {
 	* @return 时间
 	*/
 	public static String getDateFromTimeMillis(long timeMillis) {
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
-		String time = sdf.format(new Date(timeMillis));
+		String time = getDateFormat("yyyy-MM-dd hh:mm:ss").format(new Date(timeMillis));
 		return time;
 	}	
 	
@@ -97,8 +160,7 @@ public class DateTool {
      * @return
      */
     public static String timestampToDate(String beginDate,String format) {
-        SimpleDateFormat sdf = new SimpleDateFormat(format);
-        String sd = sdf.format(new Date(Long.parseLong(beginDate)));
+        String sd = getDateFormat(format).format(new Date(Long.parseLong(beginDate)));
         return sd;
     }
 
@@ -110,11 +172,16 @@ public class DateTool {
      */
     public static String dateToTimestamp(String user_time) {
         String re_time = null;
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        long l = TimestampFormatter.getDefault().parseMinute(user_time, 0);
+        if (l != TimestampFormatter.INVALID) {
+            return String.valueOf(l).substring(0, 10);
+        }
+        
+        // 不是严格的"yyyy-MM-dd HH:mm"格式(如月份没有补0)，交给SimpleDateFormat宽松解析
         Date d;
         try {
-            d = sdf.parse(user_time);
-            long l = d.getTime();
+            d = getDateFormat("yyyy-MM-dd HH:mm").parse(user_time);
+            l = d.getTime();
             String str = String.valueOf(l);
             re_time = str.substring(0, 10);
         } catch (ParseException e) {
@@ -1,22 +1,28 @@
 package com.itant.androidtool.string;
 
-import net.sourceforge.pinyin4j.PinyinHelper;
-import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
-import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
-import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * 汉字转拼音的工具方法
+ * 汉字转拼音的工具方法，所有方法都不修改共享状态，可以被多个线程同时调用
  * @author iTant
  *
  */
 public class HanziTool {
 	
-	private HanziTool() {
-		format = new HanyuPinyinOutputFormat();
-		format.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
-		pinyin = null;
-	}
+	/** 批量转换时，每个并行任务至少处理的字符串个数，数量太少时直接在调用线程中转换 */
+	private static final int BATCH_CHUNK_SIZE = 1024;
+	
+	private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+	
+	private HanziTool() {}
 	
 	private static class ToolProvider {
 		private static HanziTool instance = new HanziTool();
@@ -30,55 +36,158 @@ public class HanziTool {
 	public Object readResolve() {  
 		return getInstance();  
 	}
-	
-	private HanyuPinyinOutputFormat format = null;
 
-	private String[] pinyin;
-
-	// 转换单个字符
-	private String getCharacterPinYin(char c) {
-		try {
-
-			pinyin = PinyinHelper.toHanyuPinyinStringArray(c, format);
-
-		}
-		catch (BadHanyuPinyinOutputFormatCombination e) {
-			e.printStackTrace();
-		}
-
-		// 如果c不是汉字，toHanyuPinyinStringArray会返回null
-		if (pinyin == null) {
-			if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
-				return String.valueOf(c);
+	/**
+	 * 将汉字转换为拼音。
+	 * 第一次转换时要根据pinyin4j生成整张拼音表(约2万个汉字，手机上可能需要一秒以上)，
+	 * 不要在UI线程中第一次调用，可以在启动时先调用{@link #warmUp()}
+	 * 
+	 * @param hanzi 要转换为拼音的汉字字符串
+	 * @return 汉字字符串的拼音
+	 */
+	public String getPinYin(String hanzi) {
+		PinyinTable table = PinyinTable.getInstance();
+		StringBuilder sb = new StringBuilder(hanzi.length() * 4);
+		for (int i = 0; i < hanzi.length(); ++i) {
+			char character = hanzi.charAt(i);
+			if (PinyinTable.isHanzi(character)) {
+				// 只取一个发音，如果是多音字，仅取第一个发音；没有读音的汉字不予理会
+				String pinyin = table.getFirstPinyin(character);
+				if (pinyin != null) {
+					sb.append(pinyin);
+				}
+			} else if ((character >= 'A' && character <= 'Z') || (character >= 'a' && character <= 'z')
+					|| (character >= '0' && character <= '9')) {
+				// 字母和数字原样保留
+				sb.append(character);
+			} else {
+				// 表以外有读音的字符(如"〇")，其他字符不予理会
+				String pinyin = PinyinTable.getFallbackPinyin(character);
+				if (pinyin != null) {
+					sb.append(pinyin);
+				}
 			}
-			
-			return null;
 		}
-		// 只取一个发音，如果是多音字，仅取第一个发音
-		return pinyin[0];
+		return sb.toString();
 	}
-
+	
 	/**
-	 * 将汉字转换为拼音
+	 * 获取汉字字符串所有多音字读音的组合，组合在需要时才展开
 	 * 
 	 * @param hanzi 要转换为拼音的汉字字符串
-	 * @return 汉字字符串的拼音
+	 * @param maxCombinations 最多保留的组合数，超出后剩余的多音字只取第一个读音
+	 * @return 读音组合
 	 */
-	public String getPinYin(String hanzi) {
-		StringBuilder sb = new StringBuilder();
-		String tempPinyin = null;
+	public PinyinReadings getPinYinReadings(String hanzi, int maxCombinations) {
+		return PinyinReadings.of(hanzi, Math.max(1, maxCombinations));
+	}
+	
+	/**
+	 * 获取汉字的拼音首字母，如"张三"返回"zs"
+	 * 
+	 * @param hanzi 要转换的汉字字符串
+	 * @return 每个汉字拼音的首字母，字母和数字原样保留
+	 */
+	public String getPinYinInitials(String hanzi) {
+		PinyinTable table = PinyinTable.getInstance();
+		StringBuilder sb = new StringBuilder(hanzi.length());
 		for (int i = 0; i < hanzi.length(); ++i) {
-			tempPinyin = getCharacterPinYin(hanzi.charAt(i));
-			if (tempPinyin == null) {
-				// 如果str.charAt(i)非汉字，且不是数字，则不予理会
-				char character = hanzi.charAt(i);
-				if (character >= '0' && character <= '9') {
-					sb.append(character);
+			char character = hanzi.charAt(i);
+			if (PinyinTable.isHanzi(character)) {
+				String pinyin = table.getFirstPinyin(character);
+				if (pinyin != null) {
+					sb.append(pinyin.charAt(0));
 				}
+			} else if ((character >= 'A' && character <= 'Z') || (character >= 'a' && character <= 'z')
+					|| (character >= '0' && character <= '9')) {
+				sb.append(character);
 			} else {
-				sb.append(tempPinyin);
+				String pinyin = PinyinTable.getFallbackPinyin(character);
+				if (pinyin != null) {
+					sb.append(pinyin.charAt(0));
+				}
 			}
 		}
 		return sb.toString();
 	}
+	
+	/**
+	 * 批量将汉字转换为拼音，数量较多时会拆分到多个线程中并行转换
+	 * 
+	 * @param hanziList 要转换为拼音的汉字字符串集合
+	 * @return 与hanziList顺序一一对应的拼音集合，hanziList中为null的元素结果也为null
+	 */
+	public List<String> getPinYin(final List<String> hanziList) {
+		final int size = hanziList.size();
+		final String[] result = new String[size];
+		int chunkCount = Math.min(PARALLELISM * 4, (size + BATCH_CHUNK_SIZE - 1) / BATCH_CHUNK_SIZE);
+		if (chunkCount <= 1 || PARALLELISM == 1) {
+			convertRange(hanziList, result, 0, size);
+			return new ArrayList<String>(Arrays.asList(result));
+		}
+		
+		// 最后一段留给调用线程自己转换，避免调用线程空等
+		int chunkSize = (size + chunkCount - 1) / chunkCount;
+		List<Future<?>> futures = new ArrayList<Future<?>>(chunkCount);
+		for (int start = chunkSize; start < size; start += chunkSize) {
+			final int from = start;
+			final int to = Math.min(size, start + chunkSize);
+			futures.add(BatchExecutorProvider.executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					convertRange(hanziList, result, from, to);
+				}
+			}));
+		}
+		convertRange(hanziList, result, 0, Math.min(size, chunkSize));
+		
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("批量转换拼音时被中断", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("批量转换拼音失败", e.getCause());
+			}
+		}
+		return new ArrayList<String>(Arrays.asList(result));
+	}
+	
+	private void convertRange(List<String> hanziList, String[] result, int from, int to) {
+		for (int i = from; i < to; i++) {
+			String hanzi = hanziList.get(i);
+			result[i] = hanzi == null ? null : getPinYin(hanzi);
+		}
+	}
+	
+	/**
+	 * 批量转换使用的线程池，第一次批量转换时才创建
+	 */
+	private static class BatchExecutorProvider {
+		private static ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "HanziTool-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * 在后台线程中提前生成拼音表，之后的转换不再有第一次调用的等待。可以多次调用，表只生成一次
+	 * 
+	 * @return 生成完成时结束的Future，需要等待时调用get()
+	 */
+	public Future<?> warmUp() {
+		return BatchExecutorProvider.executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				PinyinTable.getInstance();
+			}
+		});
+	}
 }
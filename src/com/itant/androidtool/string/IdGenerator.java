@@ -0,0 +1,180 @@
+package com.itant.androidtool.string;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁、单调递增的ID生成器(类似Snowflake)。
+ * 生成的long从高位到低位依次为：1位符号位(恒为0)、41位毫秒时间戳(相对于2015-01-01)、10位节点号、12位序列号。
+ * 同一毫秒内最多生成4096个ID，超出后借用下一毫秒，因此同一个生成器生成的ID不会重复且严格递增，
+ * 系统时间被往回调整时也是如此。不同进程或设备必须使用不同的节点号，见{@link #getDefault()}
+ * @author iTant
+ *
+ */
+public final class IdGenerator {
+
+	/** 时间戳的起点：2015-01-01 00:00:00 UTC */
+	public static final long EPOCH = 1420070400000L;
+
+	private static final int NODE_BITS = 10;
+	private static final int SEQUENCE_BITS = 12;
+
+	/** 节点号的最大值 */
+	public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+	private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+	/** Crockford Base32字母表，不含容易混淆的I、L、O、U */
+	private static final char[] BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+	/** 字符串形式的长度，定长保证字符串的字典序与数值顺序一致 */
+	public static final int STRING_LENGTH = 13;
+
+	private final long node;
+
+	/** 最近一次生成的(时间戳 << SEQUENCE_BITS | 序列号) */
+	private final AtomicLong state = new AtomicLong();
+
+	/**
+	 * @param node 节点号，范围是[0, MAX_NODE]
+	 */
+	public IdGenerator(int node) {
+		if (node < 0 || node > MAX_NODE) {
+			throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE + ": " + node);
+		}
+		this.node = node;
+	}
+
+	/** 共享实例，第一次使用时创建 */
+	private static volatile IdGenerator defaultInstance;
+
+	/** 通过{@link #setDefaultNode(int)}指定的节点号，-1表示使用进程号 */
+	private static int defaultNode = -1;
+
+	/**
+	 * 指定共享实例的节点号，必须在第一次调用{@link #getDefault()}之前调用。
+	 * 多进程的应用需要在每个进程启动时(如Application.onCreate中按进程名)分别指定不同的节点号
+	 *
+	 * @param node 节点号，范围是[0, MAX_NODE]
+	 * @throws IllegalStateException 共享实例已经创建
+	 */
+	public static synchronized void setDefaultNode(int node) {
+		if (node < 0 || node > MAX_NODE) {
+			throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE + ": " + node);
+		}
+		if (defaultInstance != null) {
+			throw new IllegalStateException("default IdGenerator already created with node " + defaultInstance.node);
+		}
+		defaultNode = node;
+	}
+
+	/**
+	 * 获取共享实例。没有调用{@link #setDefaultNode(int)}时以进程号的低10位作为节点号，
+	 * 进程号超过{@link #MAX_NODE}时不同进程的节点号可能相同，同一毫秒内会生成重复的ID，
+	 * 因此多进程的应用(如带有":remote"进程的应用)必须先为每个进程指定节点号
+	 *
+	 * @return 共享实例
+	 */
+	public static IdGenerator getDefault() {
+		IdGenerator instance = defaultInstance;
+		if (instance != null) {
+			return instance;
+		}
+		synchronized (IdGenerator.class) {
+			if (defaultInstance == null) {
+				int node = defaultNode >= 0 ? defaultNode : android.os.Process.myPid() & MAX_NODE;
+				defaultInstance = new IdGenerator(node);
+			}
+			return defaultInstance;
+		}
+	}
+
+	/**
+	 * @return 新的ID，大于此前生成的所有ID
+	 */
+	public long nextId() {
+		while (true) {
+			long now = System.currentTimeMillis() - EPOCH;
+			long previous = state.get();
+			long next;
+			if (now > (previous >>> SEQUENCE_BITS)) {
+				next = now << SEQUENCE_BITS;
+			} else {
+				// 同一毫秒内或者时间被往回调整，序列号加1，溢出时自然进位到时间戳
+				next = previous + 1;
+			}
+			if (state.compareAndSet(previous, next)) {
+				return ((next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS)
+						| (next & SEQUENCE_MASK);
+			}
+		}
+	}
+
+	/**
+	 * @return 新的ID的字符串形式，见{@link #toString(long)}
+	 */
+	public String nextIdString() {
+		return toString(nextId());
+	}
+
+	/**
+	 * 将ID编码为13位的Crockford Base32字符串
+	 *
+	 * @param id 非负的ID
+	 * @return 编码后的字符串
+	 */
+	public static String toString(long id) {
+		char[] buf = new char[STRING_LENGTH];
+		for (int i = STRING_LENGTH - 1; i >= 0; i--) {
+			buf[i] = BASE32[(int) (id & 31)];
+			id >>>= 5;
+		}
+		return new String(buf);
+	}
+
+	/**
+	 * 将{@link #toString(long)}生成的字符串解码为ID，忽略大小写
+	 *
+	 * @param text ID的字符串形式
+	 * @return ID，格式不正确时返回-1
+	 */
+	public static long parse(CharSequence text) {
+		if (text == null || text.length() != STRING_LENGTH) {
+			return -1;
+		}
+		long id = 0;
+		for (int i = 0; i < STRING_LENGTH; i++) {
+			int value = decode(text.charAt(i));
+			if (value < 0 || (i == 0 && value > 7)) {
+				return -1;
+			}
+			id = (id << 5) | value;
+		}
+		return id;
+	}
+
+	/**
+	 * @return ID中的时间戳(毫秒)
+	 */
+	public static long getTimestamp(long id) {
+		return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+	}
+
+	/**
+	 * @return ID中的节点号
+	 */
+	public static int getNode(long id) {
+		return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE);
+	}
+
+	private static int decode(char c) {
+		if (c >= 'a' && c <= 'z') {
+			c = (char) (c - ('a' - 'A'));
+		}
+		for (int i = 0; i < BASE32.length; i++) {
+			if (BASE32[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
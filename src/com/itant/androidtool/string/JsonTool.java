@@ -1,15 +1,27 @@
 package com.itant.androidtool.string;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonParser.Feature;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 /**
  * Json字符串的相关工具类
@@ -18,7 +30,28 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 public class JsonTool {
 	
-	private JsonTool() {}
+	/**
+	 * 全局共享的ObjectMapper，配置完成后不再修改，可以被多个线程同时使用
+	 */
+	private final ObjectMapper mapper;
+	
+	/**
+	 * 按类型缓存的ObjectReader，key为Class或TypeReference对应的Type
+	 */
+	private final ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<Type, ObjectReader>();
+	
+	/**
+	 * 按类型缓存的ObjectWriter
+	 */
+	private final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+	
+	private JsonTool() {
+		mapper = new ObjectMapper();
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
+		mapper.configure(Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true);
+		// 写入调用者传入的输出流时不关闭该流，由调用者决定何时关闭
+		mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+	}
 	
 	private static class ToolProvider {
 		private static JsonTool instance = new JsonTool();
@@ -33,6 +66,68 @@ public class JsonTool {
 		return getInstance();  
 	}
 	
+	/**
+	 * @return 全局共享的ObjectMapper，请勿修改其配置
+	 */
+	public ObjectMapper getMapper() {
+		return mapper;
+	}
+	
+	/**
+	 * 获取某个类型对应的ObjectReader，第一次使用时创建，之后从缓存中获取
+	 * 
+	 * @param type 目标对象类型
+	 * @return 该类型的ObjectReader
+	 */
+	public ObjectReader getReader(Class<?> type) {
+		ObjectReader reader = readers.get(type);
+		if (reader == null) {
+			reader = mapper.reader(type);
+			ObjectReader cached = readers.putIfAbsent(type, reader);
+			if (cached != null) {
+				reader = cached;
+			}
+		}
+		return reader;
+	}
+	
+	/**
+	 * 获取某个泛型类型对应的ObjectReader，第一次使用时创建，之后从缓存中获取
+	 * 
+	 * @param type 目标对象类型
+	 * @return 该类型的ObjectReader
+	 */
+	public ObjectReader getReader(TypeReference<?> type) {
+		Type key = type.getType();
+		ObjectReader reader = readers.get(key);
+		if (reader == null) {
+			reader = mapper.reader(type);
+			ObjectReader cached = readers.putIfAbsent(key, reader);
+			if (cached != null) {
+				reader = cached;
+			}
+		}
+		return reader;
+	}
+	
+	/**
+	 * 获取某个类型对应的ObjectWriter，第一次使用时创建，之后从缓存中获取
+	 * 
+	 * @param type 要转换的对象类型
+	 * @return 该类型的ObjectWriter
+	 */
+	public ObjectWriter getWriter(Class<?> type) {
+		ObjectWriter writer = writers.get(type);
+		if (writer == null) {
+			writer = mapper.writerWithType(type);
+			ObjectWriter cached = writers.putIfAbsent(type, writer);
+			if (cached != null) {
+				writer = cached;
+			}
+		}
+		return writer;
+	}
+	
 	/**
 	 * 将对象转换为Json字符串
 	 * 
@@ -42,10 +137,9 @@ public class JsonTool {
 	public String tojson(Object object) {
 		if (null == object)
 			return "";
-		ObjectMapper mapper = new ObjectMapper();
 		String jsonString = "";
 		try {
-			jsonString = mapper.writeValueAsString(object);
+			jsonString = getWriter(object.getClass()).writeValueAsString(object);
 		} catch (JsonProcessingException e) {
 			e.printStackTrace();
 		}
@@ -53,6 +147,47 @@ public class JsonTool {
 		return jsonString;
 	}
 
+	/**
+	 * 将对象转换为UTF-8编码的Json字节数组，不经过中间的String
+	 * 
+	 * @param object 要转换的对象
+	 * @return 转换之后的Json字节数组，转换失败时返回空数组
+	 */
+	public byte[] tojsonBytes(Object object) {
+		if (null == object)
+			return new byte[0];
+		byte[] jsonBytes = new byte[0];
+		try {
+			jsonBytes = getWriter(object.getClass()).writeValueAsBytes(object);
+		} catch (JsonProcessingException e) {
+			e.printStackTrace();
+		}
+		
+		return jsonBytes;
+	}
+	
+	/**
+	 * 将对象以UTF-8编码的Json直接写入输出流，写完后不会关闭该输出流
+	 * 
+	 * @param object 要转换的对象
+	 * @param out 目标输出流，如文件或者网络连接的输出流
+	 * @return true:表示写入成功 false:表示写入失败
+	 */
+	public boolean writeTo(Object object, OutputStream out) {
+		if (null == object)
+			return false;
+		try {
+			getWriter(object.getClass()).writeValue(out, object);
+			return true;
+		} catch (JsonProcessingException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return false;
+	}
+	
 	/**
 	 * 将Json字符串转换为对象 
 	 * 
@@ -61,14 +196,10 @@ public class JsonTool {
 	 * @return 转换之后的对象
 	 */
 	public <T> T convert(String json, Class<T> type) {
-
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
-		mapper.configure(Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true);
 		T result = null;
 		try {
 
-			result = mapper.readValue(json, type);
+			result = getReader(type).readValue(json);
 		} catch (JsonProcessingException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -86,13 +217,10 @@ public class JsonTool {
 	 * @return 转换之后的对象
 	 */
 	public <T> T convert(String json, TypeReference<T> type) {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
-		mapper.configure(Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true);
 		T result = null;
 		try {
 
-			result = mapper.readValue(json, type);
+			result = getReader(type).readValue(json);
 		} catch (JsonProcessingException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -102,35 +230,323 @@ public class JsonTool {
 		return result;
 	}
 
+	/**
+	 * 从输入流中直接读取Json并转换为对象，读取完毕后会关闭该输入流
+	 * 
+	 * @param in Json输入流
+	 * @param type 目标对象类型
+	 * @return 转换之后的对象
+	 */
+	public <T> T convert(InputStream in, Class<T> type) {
+		T result = null;
+		try {
+			result = getReader(type).readValue(in);
+		} catch (JsonProcessingException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * 从输入流中直接读取Json并转换为对象，该对象里面包含有其他对象。读取完毕后会关闭该输入流
+	 * 
+	 * @param in Json输入流
+	 * @param type 目标对象类型
+	 * @return 转换之后的对象
+	 */
+	public <T> T convert(InputStream in, TypeReference<T> type) {
+		T result = null;
+		try {
+			result = getReader(type).readValue(in);
+		} catch (JsonProcessingException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * 将字节数组中的一段Json转换为对象，不需要先构造String
+	 * 
+	 * @param json Json字节数组
+	 * @param offset Json在数组中的起始位置
+	 * @param len Json的字节长度
+	 * @param type 目标对象类型
+	 * @return 转换之后的对象
+	 */
+	public <T> T convert(byte[] json, int offset, int len, Class<T> type) {
+		T result = null;
+		try {
+			result = getReader(type).readValue(json, offset, len);
+		} catch (JsonProcessingException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * 将字节数组中的一段Json转换为对象，该对象里面包含有其他对象
+	 * 
+	 * @param json Json字节数组
+	 * @param offset Json在数组中的起始位置
+	 * @param len Json的字节长度
+	 * @param type 目标对象类型
+	 * @return 转换之后的对象
+	 */
+	public <T> T convert(byte[] json, int offset, int len, TypeReference<T> type) {
+		T result = null;
+		try {
+			result = getReader(type).readValue(json, offset, len);
+		} catch (JsonProcessingException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return result;
+	}
+
 	/**
 	 * 将Json字符串转换为对象集合
 	 * 
 	 * @param json 将要转换的Json字符串
 	 * @param type 目标对象类型
-	 * @return 转换之后的对象集合
+	 * @return 转换之后的对象集合，解析出错时返回空集合
 	 */
 	public <T> List<T> convertList(String json, Class<T> type) {
-		ObjectMapper mapper = new ObjectMapper();
-		JsonNode rootNode;
-		List<T> result = null;
+		List<T> result = new ArrayList<T>();
+		JsonParser parser = null;
+		try {
+			parser = mapper.getFactory().createParser(json);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return result;
+		}
+		
+		ElementIterator<T> iterator = new ElementIterator<T>(parser, getReader(type));
+		try {
+			while (iterator.hasNext()) {
+				result.add(iterator.next());
+			}
+		} catch (JsonStreamException e) {
+			// 与一次性解析整棵树时一样，出错时不返回已解析的部分
+			e.printStackTrace();
+			result.clear();
+		}
+		return result;
+	}
+	
+	/**
+	 * 以流的方式读取Json数组，每解析出一个元素就回调一次，不需要把整个数组读入内存
+	 * 
+	 * @param in Json数组的输入流，读取结束后会被关闭
+	 * @param type 数组元素的类型
+	 * @param listener 元素回调
+	 * @return 回调过的元素个数
+	 * @throws JsonStreamException 读取或解析出错，或者数组没有结束就到了末尾
+	 */
+	public <T> int convertList(InputStream in, Class<T> type, OnElementListener<T> listener) {
+		return dispatch(iterateList(in, type), listener);
+	}
+	
+	/**
+	 * 以流的方式读取Json数组，每解析出一个元素就回调一次，不需要把整个数组读入内存
+	 * 
+	 * @param reader Json数组的字符流，读取结束后会被关闭
+	 * @param type 数组元素的类型
+	 * @param listener 元素回调
+	 * @return 回调过的元素个数
+	 * @throws JsonStreamException 读取或解析出错，或者数组没有结束就到了末尾
+	 */
+	public <T> int convertList(Reader reader, Class<T> type, OnElementListener<T> listener) {
+		return dispatch(iterateList(reader, type), listener);
+	}
+	
+	/**
+	 * 以流的方式读取Json数组，通过迭代器逐个获取元素。
+	 * 迭代结束后输入流会自动关闭，提前结束迭代时请调用{@link ElementIterator#close()}
+	 * 
+	 * @param in Json数组的输入流
+	 * @param type 数组元素的类型
+	 * @return 元素迭代器，如果根节点不是数组则迭代器为空
+	 * @throws JsonStreamException 无法开始读取，此时in会被关闭
+	 */
+	public <T> ElementIterator<T> iterateList(InputStream in, Class<T> type) {
+		JsonParser parser;
+		try {
+			parser = mapper.getFactory().createParser(in);
+		} catch (IOException e) {
+			closeQuietly(in);
+			throw new JsonStreamException("failed to create parser", e);
+		}
+		return new ElementIterator<T>(parser, getReader(type));
+	}
+	
+	/**
+	 * 以流的方式读取Json数组，通过迭代器逐个获取元素。
+	 * 迭代结束后字符流会自动关闭，提前结束迭代时请调用{@link ElementIterator#close()}
+	 * 
+	 * @param reader Json数组的字符流
+	 * @param type 数组元素的类型
+	 * @return 元素迭代器，如果根节点不是数组则迭代器为空
+	 * @throws JsonStreamException 无法开始读取，此时reader会被关闭
+	 */
+	public <T> ElementIterator<T> iterateList(Reader reader, Class<T> type) {
+		JsonParser parser;
+		try {
+			parser = mapper.getFactory().createParser(reader);
+		} catch (IOException e) {
+			closeQuietly(reader);
+			throw new JsonStreamException("failed to create parser", e);
+		}
+		return new ElementIterator<T>(parser, getReader(type));
+	}
+	
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// 关闭失败时无需处理
+		}
+	}
+	
+	private <T> int dispatch(ElementIterator<T> iterator, OnElementListener<T> listener) {
+		int count = 0;
 		try {
-			result = new ArrayList<T>();
-			rootNode = mapper.readTree(json);
-			if (rootNode.isArray()) {
-				for (JsonNode jsonNode : rootNode) {
-					T childResult = mapper.readValue(jsonNode.traverse(), type);
-					if (childResult != null) {
-						result.add(childResult);
+			while (iterator.hasNext()) {
+				count++;
+				if (!listener.onElement(iterator.next())) {
+					break;
+				}
+			}
+		} finally {
+			iterator.close();
+		}
+		return count;
+	}
+	
+	/**
+	 * 流式读取Json数组时的元素回调
+	 */
+	public interface OnElementListener<T> {
+		/**
+		 * @param element 解析出的元素（不会为null）
+		 * @return true:继续读取 false:停止读取
+		 */
+		boolean onElement(T element);
+	}
+	
+	/**
+	 * 流式读取Json数组时的读取或解析错误，由{@link ElementIterator}抛出，cause为原始的IOException
+	 */
+	public static class JsonStreamException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public JsonStreamException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+	
+	/**
+	 * 逐个解析Json数组元素的迭代器，null元素会被跳过。
+	 * 读取或解析出错、或者数组没有结束就到了末尾时，hasNext()和next()会关闭迭代器并抛出{@link JsonStreamException}，
+	 * 不会当作正常结束
+	 */
+	public static class ElementIterator<T> implements Iterator<T>, Closeable {
+		
+		private final JsonParser parser;
+		private final ObjectReader reader;
+		private T next;
+		private boolean finished;
+		/** 构造时读取数组开头出的错，第一次hasNext()时抛出 */
+		private JsonStreamException error;
+		
+		ElementIterator(JsonParser parser, ObjectReader reader) {
+			this.parser = parser;
+			this.reader = reader;
+			try {
+				// 根节点必须是数组
+				finished = parser == null || parser.nextToken() != JsonToken.START_ARRAY;
+			} catch (IOException e) {
+				error = new JsonStreamException("failed to read array start", e);
+				finished = true;
+			}
+			if (finished) {
+				close();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next != null) {
+				return true;
+			}
+			if (finished) {
+				if (error != null) {
+					JsonStreamException e = error;
+					error = null;
+					throw e;
+				}
+				return false;
+			}
+			
+			try {
+				JsonToken token;
+				while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+					if (token == null) {
+						throw new JsonStreamException("unexpected end of input inside array", null);
+					}
+					T element = reader.readValue(parser);
+					if (element != null) {
+						next = element;
+						return true;
 					}
 				}
+			} catch (IOException e) {
+				close();
+				throw new JsonStreamException("failed to read array element", e);
+			} catch (JsonStreamException e) {
+				close();
+				throw e;
 			}
+			close();
+			return false;
+		}
 
-		} catch (JsonProcessingException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			T element = next;
+			next = null;
+			return element;
 		}
 
-		return result;
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			finished = true;
+			if (parser != null) {
+				try {
+					parser.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,220 @@
+package com.itant.androidtool.string;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 一个字符串所有读音组合的紧凑表示。
+ * 只记录每个多音字的位置，需要时才按下标展开某一种组合，不会生成所有组合的笛卡尔积。
+ * 组合数超过上限时，超出部分的多音字只取第一个读音。
+ * 第0种组合与{@link HanziTool#getPinYin(String)}的结果相同
+ * @author iTant
+ *
+ */
+public class PinyinReadings implements Iterable<String> {
+	
+	private final PinyinTable table;
+	
+	/** 多音字之间的固定部分，个数比polyphones多一个 */
+	private final String[] literals;
+	
+	/** 参与组合的多音字 */
+	private final char[] polyphones;
+	
+	/** 每个多音字参与组合的读音个数 */
+	private final int[] readingCounts;
+	
+	private final int size;
+	
+	private PinyinReadings(PinyinTable table, String[] literals, char[] polyphones, int[] readingCounts, int size) {
+		this.table = table;
+		this.literals = literals;
+		this.polyphones = polyphones;
+		this.readingCounts = readingCounts;
+		this.size = size;
+	}
+	
+	/**
+	 * 构造hanzi的读音组合
+	 * 
+	 * @param hanzi 汉字字符串
+	 * @param maxCombinations 最多保留的组合数，至少为1
+	 */
+	static PinyinReadings of(String hanzi, int maxCombinations) {
+		PinyinTable table = PinyinTable.getInstance();
+		List<String> literals = new ArrayList<String>();
+		StringBuilder literal = new StringBuilder();
+		char[] polyphones = new char[hanzi.length()];
+		int[] readingCounts = new int[hanzi.length()];
+		int polyphoneCount = 0;
+		int size = 1;
+		for (int i = 0; i < hanzi.length(); ++i) {
+			char character = hanzi.charAt(i);
+			if (PinyinTable.isHanzi(character)) {
+				int count = table.getReadingCount(character);
+				if (count > 1 && size <= maxCombinations / count) {
+					literals.add(literal.toString());
+					literal.setLength(0);
+					polyphones[polyphoneCount] = character;
+					readingCounts[polyphoneCount] = count;
+					polyphoneCount++;
+					size *= count;
+				} else if (count > 0) {
+					// 单音字，或者组合数已达上限的多音字，只取第一个读音
+					literal.append(table.getPinyin(character, 0));
+				}
+			} else if ((character >= 'A' && character <= 'Z') || (character >= 'a' && character <= 'z')
+					|| (character >= '0' && character <= '9')) {
+				literal.append(character);
+			} else {
+				// 表以外的字符很少是多音字，只取第一个读音
+				String pinyin = PinyinTable.getFallbackPinyin(character);
+				if (pinyin != null) {
+					literal.append(pinyin);
+				}
+			}
+		}
+		literals.add(literal.toString());
+		
+		char[] trimmedPolyphones = new char[polyphoneCount];
+		int[] trimmedCounts = new int[polyphoneCount];
+		System.arraycopy(polyphones, 0, trimmedPolyphones, 0, polyphoneCount);
+		System.arraycopy(readingCounts, 0, trimmedCounts, 0, polyphoneCount);
+		return new PinyinReadings(table, literals.toArray(new String[literals.size()]),
+				trimmedPolyphones, trimmedCounts, size);
+	}
+	
+	/**
+	 * @return 读音组合的个数
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * 展开第index种读音组合，最后一个多音字的读音变化最快
+	 * 
+	 * @param index 组合下标，范围是[0, size())
+	 * @return 该组合对应的拼音
+	 */
+	public String get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+		}
+		
+		int[] which = new int[polyphones.length];
+		for (int i = polyphones.length - 1; i >= 0; i--) {
+			which[i] = index % readingCounts[i];
+			index /= readingCounts[i];
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < polyphones.length; i++) {
+			sb.append(literals[i]).append(table.getPinyin(polyphones[i], which[i]));
+		}
+		return sb.append(literals[polyphones.length]).toString();
+	}
+	
+	/**
+	 * 判断是否有某种读音组合以prefix开头，匹配过程中不展开组合，不匹配的分支会被立即剪掉
+	 * 
+	 * @param prefix 拼音前缀(小写)
+	 * @return true:表示至少有一种读音组合以prefix开头
+	 */
+	public boolean startsWith(String prefix) {
+		return matchFrom(0, prefix, 0);
+	}
+	
+	/**
+	 * 判断是否有某种读音组合与pinyin完全相同
+	 * 
+	 * @param pinyin 拼音(小写)
+	 * @return true:表示至少有一种读音组合等于pinyin
+	 */
+	public boolean matches(String pinyin) {
+		return matchExactFrom(0, pinyin, 0);
+	}
+	
+	/**
+	 * @param segment 当前匹配到第几个固定部分
+	 * @param prefix 前缀
+	 * @param offset prefix中已经匹配的长度
+	 */
+	private boolean matchFrom(int segment, String prefix, int offset) {
+		String literal = literals[segment];
+		int remaining = prefix.length() - offset;
+		if (remaining <= literal.length()) {
+			return literal.regionMatches(0, prefix, offset, remaining);
+		}
+		if (!literal.regionMatches(0, prefix, offset, literal.length())) {
+			return false;
+		}
+		offset += literal.length();
+		if (segment == polyphones.length) {
+			return false;
+		}
+		
+		remaining = prefix.length() - offset;
+		for (int i = 0; i < readingCounts[segment]; i++) {
+			String reading = table.getPinyin(polyphones[segment], i);
+			if (remaining <= reading.length()) {
+				if (reading.regionMatches(0, prefix, offset, remaining)) {
+					return true;
+				}
+			} else if (reading.regionMatches(0, prefix, offset, reading.length())
+					&& matchFrom(segment + 1, prefix, offset + reading.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private boolean matchExactFrom(int segment, String pinyin, int offset) {
+		String literal = literals[segment];
+		if (!pinyin.regionMatches(offset, literal, 0, literal.length())) {
+			return false;
+		}
+		offset += literal.length();
+		if (segment == polyphones.length) {
+			return offset == pinyin.length();
+		}
+		
+		for (int i = 0; i < readingCounts[segment]; i++) {
+			String reading = table.getPinyin(polyphones[segment], i);
+			if (pinyin.regionMatches(offset, reading, 0, reading.length())
+					&& matchExactFrom(segment + 1, pinyin, offset + reading.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 按下标顺序逐个展开读音组合
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			private int index;
+			
+			@Override
+			public boolean hasNext() {
+				return index < size;
+			}
+			
+			@Override
+			public String next() {
+				if (index >= size) {
+					throw new NoSuchElementException();
+				}
+				return get(index++);
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
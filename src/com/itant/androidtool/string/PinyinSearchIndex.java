@@ -0,0 +1,301 @@
+package com.itant.androidtool.string;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于拼音的前缀搜索索引，适用于通讯录之类的列表过滤。
+ * 每个条目在添加时转换一次拼音，按全拼(如"zhangsan")和首字母(如"zs")两个键存入字典树，
+ * 查询时只需沿前缀走到对应节点再遍历其子树，耗时与前缀长度和结果个数相关，与条目总数无关。
+ * 可以被多个线程同时使用
+ * @author iTant
+ *
+ */
+public class PinyinSearchIndex<T> {
+	
+	private final HanziTool hanziTool = HanziTool.getInstance();
+	
+	private final Node<T> root = new Node<T>();
+	
+	/** 条目到其索引键的映射，用于删除和替换 */
+	private final Map<T, Entry<T>> entries = new HashMap<T, Entry<T>>();
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/**
+	 * 添加一个条目，如果该条目已经存在则用新的名字替换
+	 * 
+	 * @param item 条目
+	 * @param name 用于搜索的名字，如联系人姓名
+	 */
+	public void add(T item, String name) {
+		// 拼音转换放在锁外进行
+		Entry<T> entry = new Entry<T>(item, normalize(hanziTool.getPinYin(name)),
+				normalize(hanziTool.getPinYinInitials(name)));
+		lock.writeLock().lock();
+		try {
+			Entry<T> old = entries.put(item, entry);
+			if (old != null) {
+				unlink(old);
+			}
+			insert(entry.fullKey, entry);
+			if (!entry.initialsKey.equals(entry.fullKey)) {
+				insert(entry.initialsKey, entry);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * 删除一个条目
+	 * 
+	 * @param item 条目
+	 * @return true:表示删除成功 false:表示索引中没有该条目
+	 */
+	public boolean remove(T item) {
+		lock.writeLock().lock();
+		try {
+			Entry<T> old = entries.remove(item);
+			if (old == null) {
+				return false;
+			}
+			unlink(old);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * 清空索引
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			entries.clear();
+			root.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return 索引中的条目个数
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * 按全拼或首字母前缀搜索，如"zhang"、"zs"、"zhangs"都能搜到"张三"
+	 * 
+	 * @param prefix 用户输入的前缀，忽略大小写，ü可以用v或者u:输入
+	 * @param limit 最多返回的条目个数
+	 * @return 匹配的条目，按拼音字典序排列
+	 */
+	public List<T> search(String prefix, int limit) {
+		List<T> result = new ArrayList<T>(Math.min(limit, 16));
+		String key = normalize(prefix);
+		if (limit <= 0 || key.length() == 0) {
+			return result;
+		}
+		
+		lock.readLock().lock();
+		try {
+			Node<T> node = root;
+			for (int i = 0; i < key.length() && node != null; i++) {
+				node = node.child(key.charAt(i));
+			}
+			if (node != null) {
+				// 同一个条目可能通过全拼和首字母两条路径同时匹配，需要去重
+				collect(node, result, new IdentityHashMap<Entry<T>, Boolean>(), limit);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+	
+	private void collect(Node<T> node, List<T> result, Map<Entry<T>, Boolean> seen, int limit) {
+		if (node.entries != null) {
+			for (Entry<T> entry : node.entries) {
+				if (seen.put(entry, Boolean.TRUE) == null) {
+					result.add(entry.item);
+					if (result.size() >= limit) {
+						return;
+					}
+				}
+			}
+		}
+		for (int i = 0; i < node.childCount; i++) {
+			collect(node.children[i], result, seen, limit);
+			if (result.size() >= limit) {
+				return;
+			}
+		}
+	}
+	
+	private void insert(String key, Entry<T> entry) {
+		Node<T> node = root;
+		for (int i = 0; i < key.length(); i++) {
+			node = node.getOrCreateChild(key.charAt(i));
+		}
+		if (node.entries == null) {
+			node.entries = new ArrayList<Entry<T>>(1);
+		}
+		node.entries.add(entry);
+	}
+	
+	private void unlink(Entry<T> entry) {
+		delete(root, entry.fullKey, 0, entry);
+		if (!entry.initialsKey.equals(entry.fullKey)) {
+			delete(root, entry.initialsKey, 0, entry);
+		}
+	}
+	
+	/**
+	 * 从node开始沿key删除entry，并回收已经没有条目的节点
+	 * 
+	 * @return node是否已经为空
+	 */
+	private boolean delete(Node<T> node, String key, int depth, Entry<T> entry) {
+		if (depth == key.length()) {
+			if (node.entries != null) {
+				node.entries.remove(entry);
+				if (node.entries.isEmpty()) {
+					node.entries = null;
+				}
+			}
+		} else {
+			char c = key.charAt(depth);
+			Node<T> child = node.child(c);
+			if (child != null && delete(child, key, depth + 1, entry)) {
+				node.removeChild(c);
+			}
+		}
+		return node.entries == null && node.childCount == 0;
+	}
+	
+	/**
+	 * 将拼音或用户输入转换为索引键：小写字母和数字，ü(u:)统一为v
+	 */
+	private static String normalize(String text) {
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= 'A' && c <= 'Z') {
+				sb.append((char) (c + ('a' - 'A')));
+			} else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+				sb.append(c);
+			} else if (c == ':' && sb.length() > 0 && sb.charAt(sb.length() - 1) == 'u') {
+				sb.setCharAt(sb.length() - 1, 'v');
+			} else if (c == 'ü' || c == 'Ü') {
+				sb.append('v');
+			}
+		}
+		return sb.toString();
+	}
+	
+	private static class Entry<T> {
+		final T item;
+		final String fullKey;
+		final String initialsKey;
+		
+		Entry(T item, String fullKey, String initialsKey) {
+			this.item = item;
+			this.fullKey = fullKey;
+			this.initialsKey = initialsKey;
+		}
+	}
+	
+	/**
+	 * 字典树节点，子节点按字符升序存放在紧凑数组中
+	 */
+	private static class Node<T> {
+		char[] keys;
+		Node<T>[] children;
+		int childCount;
+		List<Entry<T>> entries;
+		
+		Node<T> child(char c) {
+			int index = indexOf(c);
+			return index >= 0 ? children[index] : null;
+		}
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Node<T> getOrCreateChild(char c) {
+			int index = indexOf(c);
+			if (index >= 0) {
+				return children[index];
+			}
+			
+			int insertAt = -(index + 1);
+			if (keys == null) {
+				keys = new char[2];
+				children = new Node[2];
+			} else if (childCount == keys.length) {
+				char[] newKeys = new char[childCount * 2];
+				Node<T>[] newChildren = new Node[childCount * 2];
+				System.arraycopy(keys, 0, newKeys, 0, childCount);
+				System.arraycopy(children, 0, newChildren, 0, childCount);
+				keys = newKeys;
+				children = newChildren;
+			}
+			System.arraycopy(keys, insertAt, keys, insertAt + 1, childCount - insertAt);
+			System.arraycopy(children, insertAt, children, insertAt + 1, childCount - insertAt);
+			Node<T> node = new Node<T>();
+			keys[insertAt] = c;
+			children[insertAt] = node;
+			childCount++;
+			return node;
+		}
+		
+		void removeChild(char c) {
+			int index = indexOf(c);
+			if (index < 0) {
+				return;
+			}
+			System.arraycopy(keys, index + 1, keys, index, childCount - index - 1);
+			System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+			childCount--;
+			children[childCount] = null;
+		}
+		
+		void clear() {
+			keys = null;
+			children = null;
+			childCount = 0;
+			entries = null;
+		}
+		
+		/**
+		 * @return 找到时返回下标，否则返回-(插入位置 + 1)
+		 */
+		private int indexOf(char c) {
+			int low = 0;
+			int high = childCount - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (keys[mid] < c) {
+					low = mid + 1;
+				} else if (keys[mid] > c) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(low + 1);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package com.itant.androidtool.string;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+
+/**
+ * 汉字到拼音的查找表，覆盖CJK统一汉字区间(U+4E00 ~ U+9FA5)，范围以外的字符通过{@link #getFallbackPinyin(char)}查询pinyin4j。
+ * 表在第一次使用时根据pinyin4j的数据一次性生成(逐个查询两万多个汉字，比较耗时，可通过{@link HanziTool#warmUp()}在后台提前生成)，
+ * 之后的查询只是数组下标访问，不再分配对象
+ * @author iTant
+ *
+ */
+final class PinyinTable {
+	
+	/** 表覆盖的第一个汉字 */
+	static final char FIRST_HANZI = '\u4E00';
+	
+	/** 表覆盖的最后一个汉字 */
+	static final char LAST_HANZI = '\u9FA5';
+	
+	/** 音节编号对应的音节(不带声调)，所有汉字共享同一个String对象 */
+	private final String[] syllables;
+	
+	/**
+	 * 下标为(汉字 - FIRST_HANZI)，汉字的所有读音编号存放在
+	 * readingIds[readingOffsets[i]] ~ readingIds[readingOffsets[i + 1] - 1]，第一个为最常用的读音
+	 */
+	private final int[] readingOffsets;
+	
+	/** 所有汉字的读音编号，去掉声调后相同的读音只保留一个 */
+	private final short[] readingIds;
+	
+	private PinyinTable() {
+		HanyuPinyinOutputFormat format = createFormat();
+		Map<String, Short> syllableIds = new HashMap<String, Short>();
+		int size = LAST_HANZI - FIRST_HANZI + 1;
+		readingOffsets = new int[size + 1];
+		short[] ids = new short[size * 2];
+		int count = 0;
+		for (char c = FIRST_HANZI; c <= LAST_HANZI; c++) {
+			readingOffsets[c - FIRST_HANZI] = count;
+			String[] readings = distinct(toPinyinArray(c, format));
+			if (readings == null) {
+				continue;
+			}
+			
+			for (String reading : readings) {
+				Short id = syllableIds.get(reading);
+				if (id == null) {
+					id = Short.valueOf((short) syllableIds.size());
+					syllableIds.put(reading, id);
+				}
+				if (count == ids.length) {
+					short[] newIds = new short[ids.length * 2];
+					System.arraycopy(ids, 0, newIds, 0, count);
+					ids = newIds;
+				}
+				ids[count++] = id.shortValue();
+			}
+		}
+		readingOffsets[size] = count;
+		readingIds = new short[count];
+		System.arraycopy(ids, 0, readingIds, 0, count);
+		
+		syllables = new String[syllableIds.size()];
+		for (Map.Entry<String, Short> entry : syllableIds.entrySet()) {
+			syllables[entry.getValue().shortValue()] = entry.getKey().intern();
+		}
+	}
+	
+	private static class TableProvider {
+		private static PinyinTable instance = new PinyinTable();
+	}
+	
+	static PinyinTable getInstance() {
+		return TableProvider.instance;
+	}
+	
+	/**
+	 * @return 字符c是否在表的覆盖范围内
+	 */
+	static boolean isHanzi(char c) {
+		return c >= FIRST_HANZI && c <= LAST_HANZI;
+	}
+	
+	/**
+	 * 获取汉字的第一个读音
+	 * 
+	 * @param c 汉字
+	 * @return 不带声调的拼音，如果c不在表中或者没有读音则返回null
+	 */
+	String getFirstPinyin(char c) {
+		if (!isHanzi(c)) {
+			return null;
+		}
+		int index = c - FIRST_HANZI;
+		int offset = readingOffsets[index];
+		return offset == readingOffsets[index + 1] ? null : syllables[readingIds[offset]];
+	}
+	
+	/**
+	 * @param c 汉字
+	 * @return 汉字不同读音(不带声调)的个数，不在表中或没有读音时返回0
+	 */
+	int getReadingCount(char c) {
+		if (!isHanzi(c)) {
+			return 0;
+		}
+		int index = c - FIRST_HANZI;
+		return readingOffsets[index + 1] - readingOffsets[index];
+	}
+	
+	/**
+	 * @param c 汉字
+	 * @param which 第几个读音，需小于{@link #getReadingCount(char)}
+	 * @return 不带声调的拼音
+	 */
+	String getPinyin(char c, int which) {
+		return syllables[readingIds[readingOffsets[c - FIRST_HANZI] + which]];
+	}
+	
+	/**
+	 * 表覆盖范围以外的字符(如"〇")直接查询pinyin4j，与不使用表时的结果一致。
+	 * 每次都会查询pinyin4j并分配对象，但这类字符很少见
+	 * 
+	 * @param c 不在表中的字符
+	 * @return 第一个读音(不带声调)，ASCII字符或者pinyin4j中没有读音时返回null
+	 */
+	static String getFallbackPinyin(char c) {
+		if (c < 0x80) {
+			return null;
+		}
+		String[] readings = toPinyinArray(c, createFormat());
+		return readings == null || readings.length == 0 ? null : readings[0];
+	}
+	
+	/**
+	 * 去掉重复的读音(去掉声调后多音字常有重复)，保持原有顺序
+	 * 
+	 * @return 去重后的读音，没有读音时返回null
+	 */
+	private static String[] distinct(String[] readings) {
+		if (readings == null || readings.length == 0) {
+			return null;
+		}
+		int count = 0;
+		String[] result = new String[readings.length];
+		outer:
+		for (String reading : readings) {
+			for (int i = 0; i < count; i++) {
+				if (result[i].equals(reading)) {
+					continue outer;
+				}
+			}
+			result[count++] = reading;
+		}
+		if (count == result.length) {
+			return result;
+		}
+		String[] trimmed = new String[count];
+		System.arraycopy(result, 0, trimmed, 0, count);
+		return trimmed;
+	}
+	
+	static HanyuPinyinOutputFormat createFormat() {
+		HanyuPinyinOutputFormat format = new HanyuPinyinOutputFormat();
+		format.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+		return format;
+	}
+	
+	static String[] toPinyinArray(char c, HanyuPinyinOutputFormat format) {
+		try {
+			return PinyinHelper.toHanyuPinyinStringArray(c, format);
+		} catch (BadHanyuPinyinOutputFormatCombination e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+}
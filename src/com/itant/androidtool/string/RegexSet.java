@@ -0,0 +1,99 @@
+package com.itant.androidtool.string;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 一组正则表达式，用于判断某个字符串符合其中哪些正则表达式。
+ * 每个正则表达式在构造时编译一次并由本对象持有，不占用{@link RegexTool}的共享缓存；
+ * 匹配时逐个查找，每个Pattern仍能使用自身的字面前缀等查找优化，比合并成一个大Pattern更快。
+ * 可以被多个线程同时使用
+ * @author iTant
+ *
+ */
+public class RegexSet {
+
+	private final String[] regexes;
+
+	/** 与regexes一一对应的编译结果 */
+	private final Pattern[] patterns;
+
+	/**
+	 * @param flags 编译选项，作用于所有正则表达式
+	 * @param regexes 正则表达式
+	 */
+	public RegexSet(int flags, String... regexes) {
+		this.regexes = regexes.clone();
+		patterns = new Pattern[regexes.length];
+		for (int i = 0; i < regexes.length; i++) {
+			patterns[i] = Pattern.compile(regexes[i], flags);
+		}
+	}
+
+	/**
+	 * @param regexes 正则表达式
+	 */
+	public RegexSet(String... regexes) {
+		this(0, regexes);
+	}
+
+	/**
+	 * @return 正则表达式的个数
+	 */
+	public int size() {
+		return regexes.length;
+	}
+
+	/**
+	 * @return 第index个正则表达式
+	 */
+	public String getRegex(int index) {
+		return regexes[index];
+	}
+
+	/**
+	 * @param input 要查找的字符串
+	 * @return true:表示input中至少能找到一个正则表达式的匹配
+	 */
+	public boolean matchesAny(CharSequence input) {
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(input).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 查找input中最先出现的匹配，同一位置有多个正则表达式能匹配时取排在前面的
+	 *
+	 * @param input 要查找的字符串
+	 * @return 该匹配对应的正则表达式下标，找不到时返回-1
+	 */
+	public int indexOfFirstMatch(CharSequence input) {
+		int index = -1;
+		int start = Integer.MAX_VALUE;
+		for (int i = 0; i < patterns.length && start > 0; i++) {
+			Matcher matcher = patterns[i].matcher(input);
+			if (matcher.find() && matcher.start() < start) {
+				start = matcher.start();
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * 找出所有能在input中找到匹配的正则表达式
+	 *
+	 * @param input 要查找的字符串
+	 * @return 第i个元素表示第i个正则表达式能否在input中找到匹配
+	 */
+	public boolean[] matchAll(CharSequence input) {
+		boolean[] result = new boolean[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			result[i] = patterns[i].matcher(input).find();
+		}
+		return result;
+	}
+}
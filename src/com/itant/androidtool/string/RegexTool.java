@@ -1,5 +1,8 @@
 package com.itant.androidtool.string;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -10,6 +13,24 @@ import java.util.regex.Pattern;
  */
 public class RegexTool {
 	
+	/** 最多缓存的已编译正则表达式个数 */
+	private static final int MAX_CACHED_PATTERNS = 128;
+	
+	/**
+	 * 已编译的正则表达式，key为正则表达式和flags，超过上限时淘汰最久未使用的
+	 */
+	private static final Map<String, Pattern> PATTERN_CACHE = new LinkedHashMap<String, Pattern>(MAX_CACHED_PATTERNS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+			return size() > MAX_CACHED_PATTERNS;
+		}
+	};
+	
+	private static final AtomicLong cacheHits = new AtomicLong();
+	private static final AtomicLong cacheMisses = new AtomicLong();
+	
 	private RegexTool() {}
 	
 	private static class ToolProvider {
@@ -24,13 +45,84 @@ public class RegexTool {
 	public Object readResolve() {  
 		return getInstance();  
 	}
+	
+	/**
+	 * 获取编译好的正则表达式，编译结果会被缓存，重复使用同一个正则表达式时不再重新编译
+	 * 
+	 * @param regex 正则表达式
+	 * @param flags 编译选项，如{@link Pattern#CASE_INSENSITIVE}
+	 * @return 编译好的Pattern
+	 */
+	public static Pattern compile(String regex, int flags) {
+		String key = flags + "/" + regex;
+		Pattern pattern;
+		synchronized (PATTERN_CACHE) {
+			pattern = PATTERN_CACHE.get(key);
+		}
+		if (pattern != null) {
+			cacheHits.incrementAndGet();
+			return pattern;
+		}
+		
+		// 编译放在锁外进行，并发编译同一个正则表达式时结果相同，后放入的覆盖先放入的即可
+		cacheMisses.incrementAndGet();
+		pattern = Pattern.compile(regex, flags);
+		synchronized (PATTERN_CACHE) {
+			PATTERN_CACHE.put(key, pattern);
+		}
+		return pattern;
+	}
+	
+	/**
+	 * 获取编译好的正则表达式，编译结果会被缓存
+	 * 
+	 * @param regex 正则表达式
+	 * @return 编译好的Pattern
+	 */
+	public static Pattern compile(String regex) {
+		return compile(regex, 0);
+	}
+	
+	/**
+	 * @return 正则表达式缓存的命中次数
+	 */
+	public static long getCacheHitCount() {
+		return cacheHits.get();
+	}
+	
+	/**
+	 * @return 正则表达式缓存的未命中次数(即实际编译的次数)
+	 */
+	public static long getCacheMissCount() {
+		return cacheMisses.get();
+	}
+	
+	/**
+	 * @return 当前缓存的正则表达式个数
+	 */
+	public static int getCacheSize() {
+		synchronized (PATTERN_CACHE) {
+			return PATTERN_CACHE.size();
+		}
+	}
+	
+	/**
+	 * 清空正则表达式缓存及命中统计
+	 */
+	public static void clearCache() {
+		synchronized (PATTERN_CACHE) {
+			PATTERN_CACHE.clear();
+		}
+		cacheHits.set(0);
+		cacheMisses.set(0);
+	}
 
 	/**
 	 * 查看某字符串content里是否能找到符合regex条件的字符串
 	 * @return true:表示找得到 false:表示找不到
 	 */
 	public static boolean find(String content, String regex) {
-        Pattern pattern = Pattern.compile(regex);
+        Pattern pattern = compile(regex);
         Matcher matcher = pattern.matcher(content);
         return matcher.find();
 	}
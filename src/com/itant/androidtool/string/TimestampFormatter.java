@@ -0,0 +1,360 @@
+package com.itant.androidtool.string;
+
+import java.util.TimeZone;
+
+/**
+ * DateTool中几种固定格式("yyyyMMdd"、"yyyyMMddHHmmssSSS"、"yyyy-MM-dd HH:mm")的快速格式化和解析。
+ * 直接把数字写入调用者提供的char[]或StringBuilder，解析时直接返回毫秒数，
+ * 不创建Date、Calendar和ParseException对象。
+ * 当天的年月日会被缓存，同一天内的时间只需要重新计算时分秒。
+ * 支持公元1年到9999年之间的时间，可以被多个线程同时使用
+ * @author iTant
+ *
+ */
+public final class TimestampFormatter {
+
+	/** 解析失败时的返回值 */
+	public static final long INVALID = Long.MIN_VALUE;
+
+	/** "yyyyMMdd"格式的长度 */
+	public static final int DAY_LENGTH = 8;
+
+	/** "yyyyMMddHHmmssSSS"格式的长度 */
+	public static final int COMPACT_LENGTH = 17;
+
+	/** "yyyy-MM-dd HH:mm"格式的长度 */
+	public static final int MINUTE_LENGTH = 16;
+
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+	private static volatile TimestampFormatter defaultFormatter;
+
+	private final TimeZone zone;
+
+	/** 最近一次使用的那一天，没有时区偏移变化的日子才会被缓存 */
+	private volatile Day cachedDay;
+
+	/**
+	 * @param zone 格式化和解析时使用的时区
+	 */
+	public TimestampFormatter(TimeZone zone) {
+		this.zone = (TimeZone) zone.clone();
+	}
+
+	/**
+	 * 获取使用当前默认时区的共享实例，默认时区改变后会自动换用新时区。
+	 * 每次调用都要通过TimeZone.getDefault()(会复制出新对象)检查默认时区，
+	 * 在循环中格式化大量时间戳、要求完全不分配对象时，请在循环外取得实例并复用，
+	 * 或者用{@link #TimestampFormatter(TimeZone)}创建自己的实例
+	 *
+	 * @return 共享实例
+	 */
+	public static TimestampFormatter getDefault() {
+		TimeZone zone = TimeZone.getDefault();
+		TimestampFormatter formatter = defaultFormatter;
+		if (formatter == null || !formatter.zone.getID().equals(zone.getID())) {
+			// 与DateTool中SimpleDateFormat的缓存一样按时区ID同步，保证两条路径结果一致
+			formatter = new TimestampFormatter(zone);
+			defaultFormatter = formatter;
+		}
+		return formatter;
+	}
+
+	/**
+	 * 丢弃共享实例，下次{@link #getDefault()}时重新创建。
+	 * 时区ID不变而规则改变时(如更新了时区数据)调用
+	 */
+	public static void resetDefault() {
+		defaultFormatter = null;
+	}
+
+	/**
+	 * @return 使用的时区
+	 */
+	public TimeZone getTimeZone() {
+		return (TimeZone) zone.clone();
+	}
+
+	/**
+	 * 按"yyyyMMdd"格式写入buf
+	 *
+	 * @param millis 时间戳(毫秒)
+	 * @param buf 目标数组，从offset开始至少要有{@link #DAY_LENGTH}个字符的空间
+	 * @param offset 写入的起始位置
+	 * @return 写入后的位置
+	 */
+	public int formatDay(long millis, char[] buf, int offset) {
+		return putDate(getDay(millis), buf, offset, false);
+	}
+
+	/**
+	 * 按"yyyyMMddHHmmssSSS"格式写入buf
+	 *
+	 * @param millis 时间戳(毫秒)
+	 * @param buf 目标数组，从offset开始至少要有{@link #COMPACT_LENGTH}个字符的空间
+	 * @param offset 写入的起始位置
+	 * @return 写入后的位置
+	 */
+	public int formatCompact(long millis, char[] buf, int offset) {
+		Day day = getDay(millis);
+		int timeOfDay = (int) (millis - day.startMillis);
+		offset = putDate(day, buf, offset, false);
+		offset = put2(buf, offset, timeOfDay / 3600000);
+		offset = put2(buf, offset, timeOfDay / 60000 % 60);
+		offset = put2(buf, offset, timeOfDay / 1000 % 60);
+		int millisOfSecond = timeOfDay % 1000;
+		buf[offset++] = (char) ('0' + millisOfSecond / 100);
+		return put2(buf, offset, millisOfSecond % 100);
+	}
+
+	/**
+	 * 按"yyyy-MM-dd HH:mm"格式写入buf
+	 *
+	 * @param millis 时间戳(毫秒)
+	 * @param buf 目标数组，从offset开始至少要有{@link #MINUTE_LENGTH}个字符的空间
+	 * @param offset 写入的起始位置
+	 * @return 写入后的位置
+	 */
+	public int formatMinute(long millis, char[] buf, int offset) {
+		Day day = getDay(millis);
+		int timeOfDay = (int) (millis - day.startMillis);
+		offset = putDate(day, buf, offset, true);
+		buf[offset++] = ' ';
+		offset = put2(buf, offset, timeOfDay / 3600000);
+		buf[offset++] = ':';
+		return put2(buf, offset, timeOfDay / 60000 % 60);
+	}
+
+	/**
+	 * 按"yyyyMMdd"格式追加到sb
+	 */
+	public StringBuilder appendDay(long millis, StringBuilder sb) {
+		return appendDate(getDay(millis), sb, false);
+	}
+
+	/**
+	 * 按"yyyyMMddHHmmssSSS"格式追加到sb
+	 */
+	public StringBuilder appendCompact(long millis, StringBuilder sb) {
+		Day day = getDay(millis);
+		int timeOfDay = (int) (millis - day.startMillis);
+		appendDate(day, sb, false);
+		append2(sb, timeOfDay / 3600000);
+		append2(sb, timeOfDay / 60000 % 60);
+		append2(sb, timeOfDay / 1000 % 60);
+		int millisOfSecond = timeOfDay % 1000;
+		sb.append((char) ('0' + millisOfSecond / 100));
+		return append2(sb, millisOfSecond % 100);
+	}
+
+	/**
+	 * 按"yyyy-MM-dd HH:mm"格式追加到sb
+	 */
+	public StringBuilder appendMinute(long millis, StringBuilder sb) {
+		Day day = getDay(millis);
+		int timeOfDay = (int) (millis - day.startMillis);
+		appendDate(day, sb, true);
+		sb.append(' ');
+		append2(sb, timeOfDay / 3600000);
+		sb.append(':');
+		return append2(sb, timeOfDay / 60000 % 60);
+	}
+
+	/**
+	 * 解析"yyyyMMdd"格式的日期，只读取从offset开始的{@link #DAY_LENGTH}个字符
+	 *
+	 * @return 当天0点的时间戳(毫秒)，格式或数值不正确时返回{@link #INVALID}
+	 */
+	public long parseDay(CharSequence text, int offset) {
+		if (text.length() - offset < DAY_LENGTH) {
+			return INVALID;
+		}
+		return toMillis(number(text, offset, 4), number(text, offset + 4, 2), number(text, offset + 6, 2), 0, 0, 0, 0);
+	}
+
+	/**
+	 * 解析"yyyyMMddHHmmssSSS"格式的时间，只读取从offset开始的{@link #COMPACT_LENGTH}个字符
+	 *
+	 * @return 时间戳(毫秒)，格式或数值不正确时返回{@link #INVALID}
+	 */
+	public long parseCompact(CharSequence text, int offset) {
+		if (text.length() - offset < COMPACT_LENGTH) {
+			return INVALID;
+		}
+		return toMillis(number(text, offset, 4), number(text, offset + 4, 2), number(text, offset + 6, 2),
+				number(text, offset + 8, 2), number(text, offset + 10, 2), number(text, offset + 12, 2),
+				number(text, offset + 14, 3));
+	}
+
+	/**
+	 * 解析"yyyy-MM-dd HH:mm"格式的时间，只读取从offset开始的{@link #MINUTE_LENGTH}个字符
+	 *
+	 * @return 时间戳(毫秒)，格式或数值不正确时返回{@link #INVALID}
+	 */
+	public long parseMinute(CharSequence text, int offset) {
+		if (text.length() - offset < MINUTE_LENGTH || text.charAt(offset + 4) != '-' || text.charAt(offset + 7) != '-'
+				|| text.charAt(offset + 10) != ' ' || text.charAt(offset + 13) != ':') {
+			return INVALID;
+		}
+		return toMillis(number(text, offset, 4), number(text, offset + 5, 2), number(text, offset + 8, 2),
+				number(text, offset + 11, 2), number(text, offset + 14, 2), 0, 0);
+	}
+
+	/**
+	 * 获取millis所在那一天的年月日，优先使用缓存
+	 */
+	private Day getDay(long millis) {
+		Day day = cachedDay;
+		if (day != null && millis >= day.startMillis && millis < day.endMillis) {
+			return day;
+		}
+
+		int offset = zone.getOffset(millis);
+		long epochDay = floorDiv(millis + offset, MILLIS_PER_DAY);
+		long startMillis = epochDay * MILLIS_PER_DAY - offset;
+		day = new Day(epochDay, startMillis, startMillis + MILLIS_PER_DAY);
+		if (day.year < 1 || day.year > 9999) {
+			throw new IllegalArgumentException("year out of range: " + day.year);
+		}
+		// 当天有夏令时切换的话，一天内的偏移不固定，不能缓存
+		if (zone.getOffset(day.startMillis) == offset && zone.getOffset(day.endMillis - 1) == offset) {
+			cachedDay = day;
+		}
+		return day;
+	}
+
+	/**
+	 * 将本地时间转换为时间戳，各字段为负数表示解析失败
+	 */
+	private long toMillis(int year, int month, int dayOfMonth, int hour, int minute, int second, int millisOfSecond) {
+		if (year < 1 || month < 1 || month > 12 || dayOfMonth < 1 || dayOfMonth > daysInMonth(year, month)
+				|| hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millisOfSecond < 0) {
+			return INVALID;
+		}
+
+		long local = epochDay(year, month, dayOfMonth) * MILLIS_PER_DAY
+				+ hour * 3600000L + minute * 60000L + second * 1000L + millisOfSecond;
+		// 先按标准时间估算，再用该时刻的实际偏移修正(与Calendar的处理方式一致)
+		int offset = zone.getOffset(local - zone.getRawOffset());
+		long millis = local - offset;
+		int actualOffset = zone.getOffset(millis);
+		if (actualOffset != offset) {
+			millis = local - actualOffset;
+		}
+		return millis;
+	}
+
+	private static int putDate(Day day, char[] buf, int offset, boolean separated) {
+		offset = put2(buf, offset, day.year / 100);
+		offset = put2(buf, offset, day.year % 100);
+		if (separated) {
+			buf[offset++] = '-';
+		}
+		offset = put2(buf, offset, day.month);
+		if (separated) {
+			buf[offset++] = '-';
+		}
+		return put2(buf, offset, day.dayOfMonth);
+	}
+
+	private static StringBuilder appendDate(Day day, StringBuilder sb, boolean separated) {
+		append2(sb, day.year / 100);
+		append2(sb, day.year % 100);
+		if (separated) {
+			sb.append('-');
+		}
+		append2(sb, day.month);
+		if (separated) {
+			sb.append('-');
+		}
+		return append2(sb, day.dayOfMonth);
+	}
+
+	private static int put2(char[] buf, int offset, int value) {
+		buf[offset] = (char) ('0' + value / 10);
+		buf[offset + 1] = (char) ('0' + value % 10);
+		return offset + 2;
+	}
+
+	private static StringBuilder append2(StringBuilder sb, int value) {
+		return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+	}
+
+	/**
+	 * 读取固定位数的十进制数字
+	 *
+	 * @return 读取的数值，有非数字字符时返回-1
+	 */
+	private static int number(CharSequence text, int offset, int digits) {
+		int value = 0;
+		for (int i = offset; i < offset + digits; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static boolean isLeapYear(int year) {
+		return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			return isLeapYear(year) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * @return 公历日期距1970-01-01的天数
+	 */
+	private static long epochDay(int year, int month, int dayOfMonth) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + dayOfMonth - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+	}
+
+	/**
+	 * 某一天的年月日以及这一天对应的时间戳范围
+	 */
+	private static final class Day {
+		final long startMillis;
+		final long endMillis;
+		final int year;
+		final int month;
+		final int dayOfMonth;
+
+		Day(long epochDay, long startMillis, long endMillis) {
+			this.startMillis = startMillis;
+			this.endMillis = endMillis;
+
+			long z = epochDay + 719468;
+			long era = (z >= 0 ? z : z - 146096) / 146097;
+			long dayOfEra = z - era * 146097;
+			long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+			long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+			long mp = (5 * dayOfYear + 2) / 153;
+			month = (int) (mp < 10 ? mp + 3 : mp - 9);
+			dayOfMonth = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+			year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+		}
+	}
+}